@@ -345,6 +345,23 @@ public class MasterProblem extends Problem implements SimpleProblemForm, Grouped
         // do nothing
         }
 
+    /** This method is called from a SlaveConnection's writer thread to optionally send data to the Slave 
+        via the dataOut stream before the individuals of each job, e.g. state which changes during the run.
+        By default it does nothing.  If you override this you must also override (and use) receiveJobData(). */
+    public void sendJobData(EvolutionState state, DataOutputStream dataOut) throws IOException
+        {
+        // do nothing
+        }
+
+    /** This method is called on a MasterProblem by the Slave before it reads the individuals of each job.
+        You should use this method to read the data written by sendJobData() via the dataIn stream and 
+        to apply it to the given EvolutionState, which is the one used to evaluate the job.  By default 
+        this method does nothing. */
+    public void receiveJobData(EvolutionState state, DataInputStream dataIn) throws IOException
+        {
+        // do nothing
+        }
+
     /** This method is called by a Slave to transfer data previously loaded via receiveAdditionalData() to
         a running EvolutionState at the beginning of evolution.  It may be called multiple times if multiple
         EvolutionStates are created. By default this method does nothing, which is the usual situation. */
@@ -483,6 +483,7 @@ public class Slave
         int numInds=1; 
         try
             {
+            state.evaluator.masterproblem.receiveJobData(state, dataIn);
             numInds = dataIn.readInt();
             }
         catch (IOException e)
@@ -659,6 +660,7 @@ public class Slave
         try
             {
             countVictoriesOnly = dataIn.readBoolean();
+            state.evaluator.masterproblem.receiveJobData(state, dataIn);
             numInds = dataIn.readInt();
             }
         catch (IOException e)
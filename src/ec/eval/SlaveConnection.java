@@ -216,6 +216,9 @@ class SlaveConnection
                     // Tell the server whether to count victories only or not.
                     dataOut.writeBoolean(job.countVictoriesOnly);
                     }
+
+                // transmit the data of the job, if any
+                state.evaluator.masterproblem.sendJobData(state, dataOut);
                                 
                 // transmit number of individuals 
                 dataOut.writeInt(job.inds.length); 
@@ -520,7 +520,7 @@ public class IslandExchange extends Exchanger
             p = base.push( P_SELECT_METHOD );
             immigrantsSelectionMethod = (SelectionMethod)
                 state.parameters.getInstanceForParameter( p, null, ec.SelectionMethod.class );
-            immigrantsSelectionMethod.setup( state, base );
+            immigrantsSelectionMethod.setup( state, p );
 
             // setup the selection method
             p = base.push( P_SELECT_TO_DIE_METHOD );
@@ -529,7 +529,7 @@ public class IslandExchange extends Exchanger
                     state.parameters.getInstanceForParameter( p, null, ec.SelectionMethod.class );
             else // use RandomSelection
                 indsToDieSelectionMethod = new ec.select.RandomSelection();
-            indsToDieSelectionMethod.setup( state, base );
+            indsToDieSelectionMethod.setup( state, p );
 
             // get the address of the server
             p = base.push( P_SERVER_ADDRESS );
@@ -74,7 +74,7 @@ public class CCGPHHProblem extends ReactiveGPHHProblem implements GroupedProblem
         // create an ensemble routing policy based on the individuals
         GPRoutingPolicy[] policies = new GPRoutingPolicy[ind.length];
         for (int i = 0; i < policies.length; i++)
-            policies[i] = new GPRoutingPolicy(poolFilter, ((GPIndividual)ind[i]).trees[0]);
+            policies[i] = new GPRoutingPolicy(poolFilter, ((GPIndividual)ind[i]).trees[0], priorityFunctionCompiler);
 
         EnsemblePolicy ensemblePolicy = new EnsemblePolicy(poolFilter, policies, combiner);
 
@@ -110,7 +110,7 @@ public class CCGPHHProblem extends ReactiveGPHHProblem implements GroupedProblem
         // create an ensemble routing policy based on the individuals
         GPRoutingPolicy[] policies = new GPRoutingPolicy[ind.length];
         for (int i = 0; i < policies.length; i++)
-            policies[i] = new GPRoutingPolicy(poolFilter, ((GPIndividual)ind[i]).trees[0]);
+            policies[i] = new GPRoutingPolicy(poolFilter, ((GPIndividual)ind[i]).trees[0], priorityFunctionCompiler);
 
         EnsemblePolicy ensemblePolicy = new EnsemblePolicy(poolFilter, policies, combiner);
 
@@ -1,37 +1,67 @@
-//package gphhucarp.algorithm.clearinggp;
-//
-//import gphhucarp.core.Instance;
-//import gphhucarp.decisionprocess.DecisionProcess;
-//import gphhucarp.decisionprocess.RoutingPolicy;
-//import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
-//import gphhucarp.decisionprocess.reactive.ReactiveDecisionSituation;
-//import gphhucarp.decisionprocess.routingpolicy.PathScanning5Policy;
-//import org.apache.commons.math3.random.RandomDataGenerator;
-//
-//import java.util.List;
-//
-//public class Clearing {
-//
-//    public static List<ReactiveDecisionSituation> randomDecisionSituations(
-//            int numDecisionSituations) {
-//        long seed = 8295342;
-//        RandomDataGenerator rdg = new RandomDataGenerator();
-//        rdg.reSeed(seed);
-//
-//        Instance randomInstance = Instance.randomInstance(100, rdg);
-//        randomInstance.sample(RandomDataGenerator rdg);
-//
-//        RoutingPolicy policy = new PathScanning5Policy();
-//
-//        ReactiveDecisionProcess rdp = DecisionProcess.initReactive(randomInstance, policy);
-//
-//        DynamicSimulation simulation = DynamicSimulation.standardFull(0, refRule,
-//                10, 500, 0, 0.95, 4.0);
-//
-//        List<DecisionSituation> situations = simulation.decisionSituations(minQueueLength);
-//        Collections.shuffle(situations, new Random(shuffleSeed));
-//
-//        situations = situations.subList(0, numDecisionSituations);
-//        return new PhenoCharacterisation(situations, refRule);
-//    }
-//}
+package gphhucarp.algorithm.clearinggp;
+
+import ec.EvolutionState;
+import ec.Individual;
+
+import java.util.Arrays;
+
+/**
+ * The clearing method for niching, based on the phenotypes.
+ * The individuals are sorted from the best to the worst by the first objective. Each individual that is not cleared
+ * is the winner of its niche, i.e. the individuals within the radius of its phenotype.
+ * Only the best (capacity) individuals of a niche survive, and the others are cleared
+ * to the worst fitness.
+ */
+
+public class Clearing {
+
+    /**
+     * Clear the population. The fitnesses of the individuals must be
+     * clearing multi-objective fitnesses with phenotypes.
+     * @param state the evolution state.
+     * @param radius the radius of the niches.
+     * @param capacity the capacity of the niches.
+     */
+    public static void clearPopulation(final EvolutionState state,
+                                       double radius, int capacity) {
+        for (int s = 0; s < state.population.subpops.length; s++) {
+            // sorted by the first objective, from the best to the worst
+            Individual[] sortedPop = state.population.subpops[s].individuals.clone();
+            Arrays.sort(sortedPop, (o1, o2) -> {
+                ClearingMultiObjectiveFitness f1 = (ClearingMultiObjectiveFitness)o1.fitness;
+                ClearingMultiObjectiveFitness f2 = (ClearingMultiObjectiveFitness)o2.fitness;
+
+                int cmp = Double.compare(f1.getObjective(0), f2.getObjective(0));
+                return f1.isMaximizing(0) ? -cmp : cmp;
+            });
+
+            for (int i = 0; i < sortedPop.length; i++) {
+                ClearingMultiObjectiveFitness fit1 =
+                        (ClearingMultiObjectiveFitness)sortedPop[i].fitness;
+
+                if (fit1.isCleared())
+                    continue;
+
+                int numWinners = 1;
+                for (int j = i+1; j < sortedPop.length; j++) {
+                    ClearingMultiObjectiveFitness fit2 =
+                            (ClearingMultiObjectiveFitness)sortedPop[j].fitness;
+
+                    if (fit2.isCleared())
+                        continue;
+
+                    double distance = PhenoCharacterisation.distance(
+                            fit1.getPhenotypeVector(), fit2.getPhenotypeVector());
+
+                    if (distance > radius)
+                        continue;
+
+                    if (numWinners < capacity)
+                        numWinners ++;
+                    else
+                        fit2.clear();
+                }
+            }
+        }
+    }
+}
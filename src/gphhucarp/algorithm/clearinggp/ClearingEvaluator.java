@@ -1,59 +1,240 @@
-//package gphhucarp.algorithm.clearinggp;
-//
-//import ec.EvolutionState;
-//import ec.simple.SimpleEvaluator;
-//import ec.util.Parameter;
-//import gphhucarp.decisionprocess.reactive.ReactiveDecisionSituation;
-//
-//import java.util.List;
-//
-//public class ClearingEvaluator extends SimpleEvaluator {
-//
-//    public static final String P_RADIUS = "radius";
-//    public static final String P_CAPACITY = "capacity";
-//
-//    protected boolean clear = true;
-//
-//    protected double radius;
-//    protected int capacity;
-//
-//    protected List<ReactiveDecisionSituation> reactiveDecisionSituations;
-//
-//    public double getRadius() {
-//        return radius;
-//    }
-//
-//    public int getCapacity() {
-//        return capacity;
-//    }
-//
-//    public List<ReactiveDecisionSituation> getReactiveDecisionSituations() {
-//        return reactiveDecisionSituations;
-//    }
-//
-//    public void setup(final EvolutionState state, final Parameter base) {
-//        super.setup(state, base);
-//
-//        radius = state.parameters.getDoubleWithDefault(
-//                base.push(P_RADIUS), null, 0.0);
-//        capacity = state.parameters.getIntWithDefault(
-//                base.push(P_CAPACITY), null, 1);
-//
-//        phenoCharacterisation =
-//                PhenoCharacterisation.defaultPhenoCharacterisation();
-//    }
-//
-//    @Override
-//    public void evaluatePopulation(final EvolutionState state) {
-//        super.evaluatePopulation(state);
-//
-//        if (clear) {
-//            Clearing.clearPopulation(state, radius, capacity,
-//                    phenoCharacterisation);
-//        }
-//    }
-//
-//    public void setClear(boolean clear) {
-//        this.clear = clear;
-//    }
-//}
+package gphhucarp.algorithm.clearinggp;
+
+import ec.EvolutionState;
+import ec.Individual;
+import ec.gp.GPIndividual;
+import ec.simple.SimpleEvaluator;
+import ec.util.Parameter;
+import gphhucarp.core.InstanceSamples;
+import gphhucarp.core.Objective;
+import gphhucarp.decisionprocess.routingpolicy.GPRoutingPolicy;
+import gphhucarp.gp.ReactiveGPHHProblem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The clearing evaluator characterises the phenotypes of the individuals
+ * by a phenotypic characterisation, whose decision situations are recorded by applying
+ * the reference routing policy on the first training instance.
+ *
+ * Optionally (surrogate = true), the offspring are pre-screened by a KNN surrogate over
+ * the archive of the evaluated phenotypes before the evaluation. An offspring is novel if its phenotype
+ * is farther than the novelty radius from all the archived phenotypes. The novel offspring are all
+ * evaluated. Among the others, only the most promising ones (screening-ratio) by the predicted fitness
+ * are evaluated, and the rest get the predicted fitness without being simulated.
+ *
+ * After the evaluation, the population is cleared (clear = true) with the radius and capacity.
+ * The fitness of the individuals must be ClearingMultiObjectiveFitness.
+ */
+
+public class ClearingEvaluator extends SimpleEvaluator {
+
+    public static final String P_CLEAR = "clear";
+    public static final String P_RADIUS = "radius";
+    public static final String P_CAPACITY = "capacity";
+    public static final String P_DECISION_SITUATIONS = "decision-situations";
+    public static final String P_MIN_POOL_SIZE = "min-pool-size";
+    public static final String P_SURROGATE = "surrogate";
+    public static final String P_SURROGATE_K = "surrogate-k";
+    public static final String P_ARCHIVE_SIZE = "archive-size";
+    public static final String P_SCREENING_RATIO = "screening-ratio";
+    public static final String P_NOVELTY_RADIUS = "novelty-radius";
+
+    public static final long SHUFFLE_SEED = 8295342; // the seed to select the decision situations
+
+    protected boolean clear = true;
+
+    protected double radius;
+    protected int capacity;
+
+    protected PhenoCharacterisation phenoCharacterisation;
+
+    protected boolean surrogate;
+    protected double screeningRatio;
+    protected double noveltyRadius;
+    protected KNNSurrogate knnSurrogate;
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public PhenoCharacterisation getPhenoCharacterisation() {
+        return phenoCharacterisation;
+    }
+
+    public KNNSurrogate getKnnSurrogate() {
+        return knnSurrogate;
+    }
+
+    public void setup(final EvolutionState state, final Parameter base) {
+        super.setup(state, base);
+
+        clear = state.parameters.getBoolean(
+                base.push(P_CLEAR), null, true);
+        radius = state.parameters.getDoubleWithDefault(
+                base.push(P_RADIUS), null, 0.0);
+        capacity = state.parameters.getIntWithDefault(
+                base.push(P_CAPACITY), null, 1);
+
+        int numDecisionSituations = state.parameters.getIntWithDefault(
+                base.push(P_DECISION_SITUATIONS), null, 20);
+        int minPoolSize = state.parameters.getIntWithDefault(
+                base.push(P_MIN_POOL_SIZE), null, 5);
+
+        surrogate = state.parameters.getBoolean(
+                base.push(P_SURROGATE), null, false);
+        int k = state.parameters.getIntWithDefault(
+                base.push(P_SURROGATE_K), null, 1);
+        int archiveSize = state.parameters.getIntWithDefault(
+                base.push(P_ARCHIVE_SIZE), null, 5000);
+        screeningRatio = state.parameters.getDoubleWithDefault(
+                base.push(P_SCREENING_RATIO), null, 0.5);
+        noveltyRadius = state.parameters.getDoubleWithDefault(
+                base.push(P_NOVELTY_RADIUS), null, 0.0);
+
+        if (screeningRatio < 0 || screeningRatio > 1) {
+            System.err.println("ERROR:");
+            System.err.println("The screening ratio must be within [0, 1].");
+            System.exit(1);
+        }
+
+        // record the decision situations by the reference policy on the first training instance
+        ReactiveGPHHProblem problem = (ReactiveGPHHProblem)p_problem;
+        InstanceSamples iSamples = problem.getEvaluationModel().getInstanceSamples().get(0);
+
+        phenoCharacterisation = PhenoCharacterisation.fromReferencePolicy(
+                iSamples.getBaseInstance(), iSamples.getSeed(0),
+                Objective.refReactiveRoutingPolicy(),
+                problem.getPoolFilter(), problem.getTieBreaker(),
+                numDecisionSituations, minPoolSize, SHUFFLE_SEED);
+
+        if (phenoCharacterisation.numDecisionSituations() == 0) {
+            System.err.println("ERROR:");
+            System.err.println("No decision situation has at least " + minPoolSize + " candidates.");
+            System.exit(1);
+        }
+
+        knnSurrogate = new KNNSurrogate(k, archiveSize);
+    }
+
+    @Override
+    public void evaluatePopulation(final EvolutionState state) {
+        ReactiveGPHHProblem problem = (ReactiveGPHHProblem)p_problem;
+
+        // characterise the phenotypes of the offspring, whose phenotypes may be copied from the parents
+        List<Individual> offspring = new ArrayList<>();
+        for (int s = 0; s < state.population.subpops.length; s++) {
+            for (Individual indi : state.population.subpops[s].individuals) {
+                ClearingMultiObjectiveFitness fit = (ClearingMultiObjectiveFitness)indi.fitness;
+
+                if (indi.evaluated && fit.getPhenotypeVector() != null)
+                    continue;
+
+                GPRoutingPolicy policy = new GPRoutingPolicy(problem.getPoolFilter(),
+                        ((GPIndividual)indi).trees[0], problem.getPriorityFunctionCompiler());
+                fit.setPhenotypeVector(phenoCharacterisation.characterise(policy));
+
+                if (!indi.evaluated)
+                    offspring.add(indi);
+            }
+        }
+
+        Set<Individual> screened = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (surrogate && knnSurrogate.size() >= knnSurrogate.getK())
+            screen(state, offspring, screened);
+
+        // the individuals screened out are not given to the simple evaluator,
+        // which evaluates all the individuals given
+        Individual[][] individuals = new Individual[state.population.subpops.length][];
+        for (int s = 0; s < state.population.subpops.length; s++) {
+            individuals[s] = state.population.subpops[s].individuals;
+
+            List<Individual> toEvaluate = new ArrayList<>();
+            for (Individual indi : individuals[s]) {
+                if (!screened.contains(indi))
+                    toEvaluate.add(indi);
+            }
+            state.population.subpops[s].individuals = toEvaluate.toArray(new Individual[0]);
+        }
+
+        try {
+            super.evaluatePopulation(state);
+        }
+        finally {
+            for (int s = 0; s < state.population.subpops.length; s++)
+                state.population.subpops[s].individuals = individuals[s];
+        }
+
+        // archive the evaluated offspring
+        for (Individual indi : offspring) {
+            ClearingMultiObjectiveFitness fit = (ClearingMultiObjectiveFitness)indi.fitness;
+            knnSurrogate.add(fit.getPhenotypeVector(), fit.getObjectives());
+        }
+
+        if (surrogate) {
+            state.output.message("Surrogate: " + screened.size() + " of " +
+                    (offspring.size() + screened.size()) + " offspring screened out.");
+        }
+
+        if (clear)
+            Clearing.clearPopulation(state, radius, capacity);
+    }
+
+    /**
+     * Pre-screen the offspring by the KNN surrogate.
+     * The offspring screened out get the predicted fitness, and are moved from the list to the set.
+     * @param state the evolution state.
+     * @param offspring the offspring to be evaluated.
+     * @param screened the offspring screened out.
+     */
+    private void screen(final EvolutionState state, List<Individual> offspring, Set<Individual> screened) {
+        List<Individual> known = new ArrayList<>();
+        List<double[]> predictions = new ArrayList<>();
+
+        for (int i = offspring.size() - 1; i >= 0; i--) {
+            Individual indi = offspring.get(i);
+            int[] phenotype = ((ClearingMultiObjectiveFitness)indi.fitness).getPhenotypeVector();
+
+            if (knnSurrogate.nearestDistance(phenotype) > noveltyRadius)
+                continue; // novel, to be evaluated
+
+            known.add(indi);
+            predictions.add(knnSurrogate.predict(phenotype));
+            offspring.remove(i);
+        }
+
+        // sort the known offspring from the most promising by the predicted first objective
+        boolean maximize = ((ClearingMultiObjectiveFitness)state.population.subpops[0]
+                .species.f_prototype).isMaximizing(0);
+        Integer[] order = new Integer[known.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (o1, o2) -> {
+            int cmp = Double.compare(predictions.get(o1)[0], predictions.get(o2)[0]);
+            return maximize ? -cmp : cmp;
+        });
+
+        int numPromising = (int)Math.ceil(screeningRatio * known.size());
+        for (int i = 0; i < order.length; i++) {
+            Individual indi = known.get(order[i]);
+
+            if (i < numPromising) {
+                offspring.add(indi);
+            }
+            else {
+                ((ClearingMultiObjectiveFitness)indi.fitness).setObjectives(state, predictions.get(order[i]));
+                indi.evaluated = true;
+                screened.add(indi);
+            }
+        }
+    }
+}
@@ -5,12 +5,20 @@ import ec.multiobjective.MultiObjectiveFitness;
 
 public class ClearingMultiObjectiveFitness extends MultiObjectiveFitness {
 
-    // each element of the phenotype vector is
-    // the index of the best candidate selected for each decision situation.
+    // each element of the phenotype vector is the rank (by the reference policy)
+    // of the candidate selected for each decision situation.
     private int[] phenotypeVector;
 
     private boolean cleared;
 
+    public int[] getPhenotypeVector() {
+        return phenotypeVector;
+    }
+
+    public void setPhenotypeVector(int[] phenotypeVector) {
+        this.phenotypeVector = phenotypeVector;
+    }
+
     public void clear() {
         for (int i = 0; i < objectives.length; i++) {
             if (maximize[i]) {
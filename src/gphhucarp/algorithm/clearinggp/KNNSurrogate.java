@@ -0,0 +1,118 @@
+package gphhucarp.algorithm.clearinggp;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * The K-nearest-neighbour surrogate of the fitness, based on the phenotypes.
+ * It has an archive of the phenotypes and fitnesses (objective values) of the evaluated individuals.
+ * The fitness of a new phenotype is predicted as the average fitness of its K nearest
+ * phenotypes in the archive. The archive keeps the latest individuals up to its capacity.
+ */
+
+public class KNNSurrogate {
+
+    private int k;
+    private int capacity;
+    private LinkedList<int[]> phenotypes;
+    private LinkedList<double[]> fitnesses;
+
+    public KNNSurrogate(int k, int capacity) {
+        this.k = k;
+        this.capacity = capacity;
+        phenotypes = new LinkedList<>();
+        fitnesses = new LinkedList<>();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return phenotypes.size();
+    }
+
+    /**
+     * Add an evaluated individual to the archive.
+     * The oldest individual is removed if the archive is full.
+     * @param phenotype the phenotype of the individual.
+     * @param fitness the objective values of the individual.
+     */
+    public void add(int[] phenotype, double[] fitness) {
+        phenotypes.addLast(phenotype);
+        fitnesses.addLast(fitness.clone());
+
+        if (phenotypes.size() > capacity) {
+            phenotypes.removeFirst();
+            fitnesses.removeFirst();
+        }
+    }
+
+    /**
+     * The distance from a phenotype to its nearest phenotype in the archive.
+     * @param phenotype the phenotype.
+     * @return the distance, or positive infinity if the archive is empty.
+     */
+    public double nearestDistance(int[] phenotype) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int[] archived : phenotypes) {
+            double distance = PhenoCharacterisation.distance(phenotype, archived);
+            if (nearest > distance)
+                nearest = distance;
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Predict the fitness of a phenotype by its K nearest phenotypes in the archive.
+     * @param phenotype the phenotype.
+     * @return the predicted objective values, or null if the archive is empty.
+     */
+    public double[] predict(int[] phenotype) {
+        if (phenotypes.isEmpty())
+            return null;
+
+        int numNeighbours = Math.min(k, phenotypes.size());
+
+        // the K nearest neighbours found so far, sorted by distance
+        double[] nearestDistances = new double[numNeighbours];
+        double[][] nearestFitnesses = new double[numNeighbours][];
+        int found = 0;
+
+        Iterator<double[]> fitnessIterator = fitnesses.iterator();
+        for (int[] archived : phenotypes) {
+            double distance = PhenoCharacterisation.distance(phenotype, archived);
+            double[] fitness = fitnessIterator.next();
+
+            if (found == numNeighbours && distance >= nearestDistances[found-1])
+                continue;
+
+            int pos = (found == numNeighbours) ? found - 1 : found;
+            while (pos > 0 && nearestDistances[pos-1] > distance) {
+                nearestDistances[pos] = nearestDistances[pos-1];
+                nearestFitnesses[pos] = nearestFitnesses[pos-1];
+                pos --;
+            }
+            nearestDistances[pos] = distance;
+            nearestFitnesses[pos] = fitness;
+
+            if (found < numNeighbours)
+                found ++;
+        }
+
+        double[] predicted = new double[nearestFitnesses[0].length];
+        for (double[] fitness : nearestFitnesses) {
+            for (int j = 0; j < predicted.length; j++)
+                predicted[j] += fitness[j];
+        }
+        for (int j = 0; j < predicted.length; j++)
+            predicted[j] /= numNeighbours;
+
+        return predicted;
+    }
+}
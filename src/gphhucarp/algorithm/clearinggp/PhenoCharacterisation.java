@@ -0,0 +1,184 @@
+package gphhucarp.algorithm.clearinggp;
+
+import gphhucarp.core.Arc;
+import gphhucarp.core.Instance;
+import gphhucarp.decisionprocess.DecisionProcessEvent;
+import gphhucarp.decisionprocess.DecisionProcessState;
+import gphhucarp.decisionprocess.DecisionSituation;
+import gphhucarp.decisionprocess.PoolFilter;
+import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.StateProduct;
+import gphhucarp.decisionprocess.TieBreaker;
+import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
+import gphhucarp.decisionprocess.reactive.ReactiveDecisionSituation;
+import gphhucarp.decisionprocess.reactive.event.ReactiveRefillEvent;
+import gphhucarp.representation.route.NodeSeqRoute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * The phenotypic characterisation of the routing policies.
+ * It is a fixed set of decision situations, recorded by applying a reference policy on an instance.
+ * For each decision situation, the candidates (the pool filtered by the pool filter) are ranked
+ * by the reference policy. The phenotype of a routing policy is a vector, each element of which
+ * is the rank (by the reference policy) of the candidate selected by the policy in a decision situation.
+ *
+ * Two policies making the same decisions in all the decision situations have the same phenotype.
+ * Calculating a phenotype only requires a few hundred priority calculations,
+ * which is much cheaper than simulating the decision processes.
+ */
+
+public class PhenoCharacterisation {
+
+    private List<ReactiveDecisionSituation> decisionSituations;
+    private List<List<Arc>> referenceRankings; // the candidates ranked by the reference policy
+    private TieBreaker tieBreaker;
+
+    public PhenoCharacterisation(List<ReactiveDecisionSituation> decisionSituations,
+                                 RoutingPolicy referencePolicy,
+                                 TieBreaker tieBreaker) {
+        this.decisionSituations = decisionSituations;
+        this.tieBreaker = tieBreaker;
+
+        referenceRankings = new ArrayList<>();
+        for (ReactiveDecisionSituation rds : decisionSituations)
+            referenceRankings.add(ranking(referencePolicy, rds));
+    }
+
+    public List<ReactiveDecisionSituation> getDecisionSituations() {
+        return decisionSituations;
+    }
+
+    public int numDecisionSituations() {
+        return decisionSituations.size();
+    }
+
+    /**
+     * Characterise a routing policy.
+     * @param policy the routing policy.
+     * @return the phenotype vector of the policy.
+     */
+    public int[] characterise(RoutingPolicy policy) {
+        int[] phenotype = new int[decisionSituations.size()];
+
+        for (int i = 0; i < decisionSituations.size(); i++) {
+            ReactiveDecisionSituation rds = decisionSituations.get(i);
+            List<Arc> pool = rds.getPool();
+
+            double[] priorities = new double[pool.size()];
+            policy.priorities(pool, rds.getRoute(), rds.getState(), priorities);
+
+            // select the candidate in the same way as the routing policy does
+            int selected = 0;
+            for (int j = 1; j < pool.size(); j++) {
+                if (tieBreaker.compare(priorities[j], pool.get(j),
+                        priorities[selected], pool.get(selected)) < 0)
+                    selected = j;
+            }
+
+            phenotype[i] = referenceRankings.get(i).indexOf(pool.get(selected));
+        }
+
+        return phenotype;
+    }
+
+    /**
+     * Rank the candidates of a decision situation by a routing policy, the best first.
+     */
+    private List<Arc> ranking(RoutingPolicy policy, ReactiveDecisionSituation rds) {
+        List<Arc> pool = rds.getPool();
+
+        double[] priorities = new double[pool.size()];
+        policy.priorities(pool, rds.getRoute(), rds.getState(), priorities);
+
+        Integer[] order = new Integer[pool.size()];
+        for (int j = 0; j < order.length; j++)
+            order[j] = j;
+
+        Arrays.sort(order, (o1, o2) ->
+                tieBreaker.compare(priorities[o1], pool.get(o1), priorities[o2], pool.get(o2)));
+
+        List<Arc> ranking = new ArrayList<>();
+        for (int j : order)
+            ranking.add(pool.get(j));
+
+        return ranking;
+    }
+
+    /**
+     * The Euclidean distance between two phenotypes.
+     * @param phenotype1 the first phenotype.
+     * @param phenotype2 the second phenotype.
+     * @return the distance.
+     */
+    public static double distance(int[] phenotype1, int[] phenotype2) {
+        double sum = 0;
+        for (int i = 0; i < phenotype1.length; i++) {
+            double diff = phenotype1[i] - phenotype2[i];
+            sum += diff * diff;
+        }
+
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Create the phenotypic characterisation by applying a reference policy on an instance.
+     * The decision situations are recorded by the events of the decision process.
+     * Only the decision situations with at least minPoolSize candidates after filtering are kept,
+     * and a fixed number of them are selected randomly.
+     * @param instance the instance.
+     * @param seed the seed to sample the random variables of the instance.
+     * @param referencePolicy the reference policy.
+     * @param poolFilter the pool filter of the candidates.
+     * @param tieBreaker the tie breaker.
+     * @param numDecisionSituations the number of decision situations.
+     * @param minPoolSize the minimal number of candidates of a decision situation.
+     * @param shuffleSeed the seed to select the decision situations.
+     * @return the phenotypic characterisation.
+     */
+    public static PhenoCharacterisation fromReferencePolicy(Instance instance,
+                                                            long seed,
+                                                            RoutingPolicy referencePolicy,
+                                                            PoolFilter poolFilter,
+                                                            TieBreaker tieBreaker,
+                                                            int numDecisionSituations,
+                                                            int minPoolSize,
+                                                            long shuffleSeed) {
+        // all the state products are maintained, so that any feature can be calculated
+        DecisionProcessState state = new DecisionProcessState(instance, seed,
+                EnumSet.allOf(StateProduct.class));
+        PriorityQueue<DecisionProcessEvent> eventQueue = new PriorityQueue<>();
+        for (NodeSeqRoute route : state.getSolution().getRoutes())
+            eventQueue.add(new ReactiveRefillEvent(0, route));
+
+        ReactiveDecisionProcess dp = new ReactiveDecisionProcess(state, eventQueue, referencePolicy);
+
+        List<DecisionSituation> recorded = new ArrayList<>();
+        dp.setRecordedDecisionSituations(recorded);
+        dp.run();
+
+        List<ReactiveDecisionSituation> situations = new ArrayList<>();
+        for (DecisionSituation ds : recorded) {
+            ReactiveDecisionSituation rds = (ReactiveDecisionSituation)ds;
+            List<Arc> filteredPool = poolFilter.filter(rds.getPool(), rds.getRoute(), rds.getState());
+
+            if (filteredPool.size() < minPoolSize)
+                continue;
+
+            situations.add(new ReactiveDecisionSituation(
+                    new ArrayList<>(filteredPool), rds.getRoute(), rds.getState()));
+        }
+
+        Collections.shuffle(situations, new Random(shuffleSeed));
+        if (situations.size() > numDecisionSituations)
+            situations = new ArrayList<>(situations.subList(0, numDecisionSituations));
+
+        return new PhenoCharacterisation(situations, referencePolicy, tieBreaker);
+    }
+}
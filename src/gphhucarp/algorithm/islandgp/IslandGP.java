@@ -0,0 +1,176 @@
+package gphhucarp.algorithm.islandgp;
+
+import ec.EvolutionState;
+import ec.exchange.IslandExchange;
+import ec.util.Parameter;
+import ec.util.ParameterDatabase;
+import gputils.SimpleEvolve;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run the GPHH as an island model on the local host. Each island is a separate JVM running
+ * the GPHH with its own (smaller) population, its own seed and its own seed rotation of the evaluation model.
+ * The islands are connected in a ring by the IslandExchange, and the first island is also the server.
+ * Every island sends its best individuals to the next island every few generations
+ * (exch.size, exch.mod and exch.start), and the immigrants are evaluated by the receiving island.
+ *
+ * The islands are given the same arguments, plus their ids, seeds, ports and stat files:
+ *  island i has the id island-i, seed.0 = seed.0 + i and exch.client-port = exch.client-port + i.
+ * Each island writes its own out.stat and stat.csv files. After all the islands finish,
+ * the stat.csv files are merged into job.[seed].islands.stat.csv, with the island of each line.
+ * For example,
+ *  java gphhucarp.algorithm.islandgp.IslandGP -file train.params -p islands=4
+ */
+
+public class IslandGP {
+
+    public static final String P_ISLANDS = "islands";
+
+    public static final String ISLAND_ID_PREFIX = "island-";
+
+    public static void main(String[] args) {
+        ParameterDatabase parameters = SimpleEvolve.loadParameterDatabase(args);
+
+        Parameter p = new Parameter(P_ISLANDS);
+        int numIslands = parameters.getIntWithDefault(p, null, 4);
+        p = new Parameter("seed").push("" + 0);
+        long seed = parameters.getLongWithDefault(p, null, 0);
+        p = new Parameter(EvolutionState.P_EXCHANGER).push(IslandExchange.P_CLIENT_PORT);
+        int clientPort = parameters.getIntWithDefault(p, null, 9000);
+
+        if (numIslands < 1) {
+            System.err.println("ERROR:");
+            System.err.println("The number of islands must be positive.");
+            System.exit(1);
+        }
+
+        List<Process> islands = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Process island : islands)
+                island.destroy();
+        }));
+
+        for (int i = 0; i < numIslands; i++) {
+            List<String> command = islandCommand(args, i, numIslands, seed + i, clientPort + i);
+
+            try {
+                islands.add(new ProcessBuilder(command).inheritIO().start());
+            } catch (IOException e) {
+                System.err.println("ERROR:");
+                System.err.println("Unable to start island " + i + ": " + e);
+                System.exit(1);
+            }
+        }
+
+        for (Process island : islands) {
+            try {
+                island.waitFor();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        List<File> statFiles = new ArrayList<>();
+        for (int i = 0; i < numIslands; i++)
+            statFiles.add(new File("job." + (seed + i) + "." + ISLAND_ID_PREFIX + i + ".stat.csv"));
+
+        mergeStatFiles(statFiles, new File("job." + seed + ".islands.stat.csv"));
+    }
+
+    /**
+     * The command to run an island. The first island is also the server,
+     * and the islands are connected in a ring.
+     * @param args the arguments of the run.
+     * @param island the index of the island.
+     * @param numIslands the number of islands.
+     * @param seed the seed of the island.
+     * @param clientPort the client port of the island.
+     * @return the command.
+     */
+    private static List<String> islandCommand(String[] args, int island, int numIslands,
+                                              long seed, int clientPort) {
+        String exch = EvolutionState.P_EXCHANGER + ".";
+        String id = ISLAND_ID_PREFIX + island;
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SimpleEvolve.class.getName());
+        for (String arg : args)
+            command.add(arg);
+
+        List<String> islandParams = new ArrayList<>();
+        islandParams.add(exch + IslandExchange.P_OWN_ID + "=" + id);
+        islandParams.add(exch + IslandExchange.P_CLIENT_PORT + "=" + clientPort);
+        islandParams.add("seed.0=" + seed);
+        islandParams.add("stat.file=$job." + seed + "." + id + ".out.stat");
+
+        if (island == 0) {
+            islandParams.add(exch + IslandExchange.P_IS_SERVER + "=true");
+            islandParams.add(exch + "num-islands=" + numIslands);
+            for (int i = 0; i < numIslands; i++) {
+                String islandBase = exch + "island." + i + ".";
+                islandParams.add(islandBase + "id=" + ISLAND_ID_PREFIX + i);
+                islandParams.add(islandBase + "num-mig=1");
+                islandParams.add(islandBase + "mig.0=" + ISLAND_ID_PREFIX + ((i + 1) % numIslands));
+            }
+        }
+
+        for (String param : islandParams) {
+            command.add("-p");
+            command.add(param);
+        }
+
+        return command;
+    }
+
+    /**
+     * Merge the stat files of the islands into a single file,
+     * with the island of each line as the first column.
+     * @param statFiles the stat files of the islands.
+     * @param mergedFile the merged file.
+     */
+    public static void mergeStatFiles(List<File> statFiles, File mergedFile) {
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(mergedFile));
+            boolean titleWritten = false;
+
+            for (int i = 0; i < statFiles.size(); i++) {
+                if (!statFiles.get(i).exists()) {
+                    System.err.println("Missing the stat file of island " + i + ": " + statFiles.get(i));
+                    continue;
+                }
+
+                BufferedReader reader = new BufferedReader(new FileReader(statFiles.get(i)));
+                String title = reader.readLine();
+
+                if (!titleWritten && title != null) {
+                    writer.write("Island," + title);
+                    writer.newLine();
+                    titleWritten = true;
+                }
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    writer.write(i + "," + line);
+                    writer.newLine();
+                }
+
+                reader.close();
+            }
+
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -15,9 +15,8 @@ import util.random.NormalSampler;
  *
  * Natural comparison: (a1, b1) < (a2, b2) if a1 < a2 or a1 == a2 and b1 < b2.
  *
- * In addition, it has two fields for decision making process
- *  - remaining demand fraction
- *  - priority
+ * The arcs are shared by all the decision processes on the instance, so the decision making
+ * process does not write to them. The priorities of the candidates are kept by the routing policy.
  *
  * Created by gphhucarp on 14/06/17.
  */
@@ -33,8 +32,7 @@ public class Arc implements Comparable<Arc> {
     // Their distributions are known in advance (e.g. estimated from history).
     private AbstractRealSampler demandSampler; // the sampler for the demand.
     private AbstractRealSampler costSampler; // the sampler for the deadheading cost.
-
-    private double priority; // the priority for decision making process.
+    private double expectedDemand; // the mean of the demand sampler, read in every decision
 
     public Arc(int from, int to, double demand,
                double serveCost, double deadheadingCost,
@@ -45,6 +43,7 @@ public class Arc implements Comparable<Arc> {
         this.inverse = inverse;
 
         this.demandSampler = new NormalSampler(demand, demandUncertaintyLevel * demand);
+        this.expectedDemand = demandSampler.getMean();
         this.costSampler = new NormalSampler(deadheadingCost, costUncertaintyLevel * deadheadingCost);
     }
 
@@ -65,17 +64,13 @@ public class Arc implements Comparable<Arc> {
     }
 
     public double getExpectedDemand() {
-        return demandSampler.getMean();
+        return expectedDemand;
     }
 
     public double getExpectedDeadheadingCost() {
         return costSampler.getMean();
     }
 
-    public double getPriority() {
-        return priority;
-    }
-
     public void setServeCost(double serveCost) {
         this.serveCost = serveCost;
     }
@@ -84,10 +79,6 @@ public class Arc implements Comparable<Arc> {
         this.inverse = inverse;
     }
 
-    public void setPriority(double priority) {
-        this.priority = priority;
-    }
-
     /**
      * Whether the arc is a task, i.e. is required to be served.
      * @return true if the arc is a task, false otherwise.
@@ -127,24 +118,6 @@ public class Arc implements Comparable<Arc> {
         return sampledDeadheadingCost;
     }
 
-    /**
-     * Whether this arc is prior to another arc.
-     * An arc is prior to another arc if
-     *   (1) it has a smaller priority value, or
-     *   (2) they have the same priority, and this arc is better than the other arc.
-     * @param o the other arc.
-     * @return true if this arc is prior to the other, and false otherwise.
-     */
-    public boolean priorTo(Arc o) {
-        if (Double.compare(priority, o.priority) < 0)
-            return true;
-
-        if (Double.compare(priority, o.priority) > 0)
-            return false;
-
-        return compareTo(o) < 0;
-    }
-
     @Override
     public String toString() {
         return "(" + from + ", " + to + "), dem = " + demandSampler.getMean()
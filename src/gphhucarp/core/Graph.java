@@ -22,6 +22,12 @@ public class Graph {
     private Map<Integer, List<Arc>> outNeighbourMap; // the outgoing neighbours of each node.
     private Map<Integer, List<Arc>> inNeighbourMap; // the incoming neighbours of each node.
 
+    // the pass table of a node: bit j of row i is set if the shortest path from i to j passes the node.
+    // each row is calculated lazily, and invalidated when the estimated distances from its node change.
+    private int passNode = -1;
+    private long[][] passTable;
+    private boolean[] passTableRowValid;
+
     public Graph(List<Integer> nodes, Map<Pair<Integer, Integer>, Arc> arcMap) {
         this.nodes = nodes;
         this.arcMap = arcMap;
@@ -29,6 +35,9 @@ public class Graph {
         calcEstDistMatrix();
     }
 
+    private Graph() {
+    }
+
     public List<Integer> getNodes() {
         return nodes;
     }
@@ -185,6 +194,8 @@ public class Graph {
      * @param toNode the node to end with.
      */
     public void recalcEstDistanceBetween(int fromNode, int toNode) {
+        invalidatePassTable(fromNode);
+
         // local class for search nodes in the priority queue
         class SearchNode {
             private int node;
@@ -290,6 +301,94 @@ public class Graph {
         return pathTo[fromNode][toNode];
     }
 
+    /**
+     * Whether the estimated shortest path from one node to another passes a node, i.e.
+     * dist(fromNode, passNode) + dist(passNode, toNode) = dist(fromNode, toNode).
+     * The results are kept in a table for the pass node (normally the depot),
+     * so that each query is a bit test unless the distances from fromNode have changed.
+     * @param fromNode the from node.
+     * @param toNode the to node.
+     * @param passNode the node to pass.
+     * @return true if the shortest path passes the node, and false otherwise.
+     */
+    public boolean isPassed(int fromNode, int toNode, int passNode) {
+        if (passNode != this.passNode) {
+            int maxNodeId = nodes.get(nodes.size()-1);
+            this.passNode = passNode;
+            passTable = new long[maxNodeId+1][(maxNodeId >> 6) + 1];
+            passTableRowValid = new boolean[maxNodeId+1];
+        }
+
+        if (!passTableRowValid[fromNode]) {
+            long[] row = passTable[fromNode];
+            for (int i = 0; i < row.length; i++)
+                row[i] = 0;
+
+            for (int node : nodes) {
+                if (estDistMatrix[fromNode][node] ==
+                        estDistMatrix[fromNode][passNode] + estDistMatrix[passNode][node])
+                    row[node >> 6] |= 1L << node;
+            }
+
+            passTableRowValid[fromNode] = true;
+        }
+
+        return (passTable[fromNode][toNode >> 6] & (1L << toNode)) != 0;
+    }
+
+    /**
+     * Invalidate the pass table after the estimated distances from a node change.
+     * If they are the distances from the pass node, then all the rows are invalidated.
+     * @param node the node whose estimated distances change.
+     */
+    private void invalidatePassTable(int node) {
+        if (passTableRowValid == null)
+            return;
+
+        if (node == passNode) {
+            for (int i = 0; i < passTableRowValid.length; i++)
+                passTableRowValid[i] = false;
+        }
+        else {
+            passTableRowValid[node] = false;
+        }
+    }
+
+    /**
+     * Clone the graph. The nodes, arcs and neighbours are shared, since they are never modified.
+     * The estimated cost and distance matrices are copied, since they are updated by the edge failures.
+     * @return the cloned graph.
+     */
+    public Graph clone() {
+        Graph cloned = new Graph();
+        cloned.nodes = nodes;
+        cloned.arcMap = arcMap;
+        cloned.outNeighbourMap = outNeighbourMap;
+        cloned.inNeighbourMap = inNeighbourMap;
+        cloned.estCostMatrix = copy(estCostMatrix);
+        cloned.estDistMatrix = copy(estDistMatrix);
+        cloned.pathFrom = copy(pathFrom);
+        cloned.pathTo = copy(pathTo);
+
+        return cloned;
+    }
+
+    private static double[][] copy(double[][] matrix) {
+        double[][] copied = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++)
+            copied[i] = matrix[i].clone();
+
+        return copied;
+    }
+
+    private static int[][] copy(int[][] matrix) {
+        int[][] copied = new int[matrix.length][];
+        for (int i = 0; i < matrix.length; i++)
+            copied[i] = matrix[i].clone();
+
+        return copied;
+    }
+
     @Override
     public String toString() {
         String str = "Graph: \n";
@@ -41,6 +41,12 @@ public class Instance {
     private long seed;
     private RandomDataGenerator rdg = new RandomDataGenerator();
 
+    // whether the actual values are the expected values instead of being sampled,
+    // and whether the expected values have been set by the last sampling.
+    private boolean expectedValue;
+    private boolean expectedValueSampled;
+    private boolean seedSampled; // whether the actual values are sampled by the current seed
+
     private Map<Arc, List<Arc>> taskToTaskMap; // the task-to-task map, used for generating features in the decision making process.
 
     public Instance(Graph graph, List<Arc> tasks, int depot, Arc depotLoop, double capacity, int numVehicles,
@@ -189,10 +195,65 @@ public class Instance {
         this.costUncertaintyLevel = costUncertaintyLevel;
     }
 
+    public boolean isExpectedValue() {
+        return expectedValue;
+    }
+
+    /**
+     * Set whether the actual demands and deadheading costs are the expected values.
+     * An expected-value instance is deterministic: sampling with any seed gives the expected values,
+     * and the actual distances are only calculated once.
+     * @param expectedValue true if the actual values are the expected values, and false otherwise.
+     */
+    public void setExpectedValue(boolean expectedValue) {
+        this.expectedValue = expectedValue;
+        seedSampled = false;
+    }
+
+    /**
+     * Set the seed, and sample the instance by the seed.
+     * The sampling is deterministic given the seed, so the instance is not sampled again
+     * if it has been sampled by the same seed, e.g. when the same sample is simulated
+     * by a number of routing policies one after another.
+     * @param seed the seed.
+     */
     public void setSeed(long seed) {
+        if (seedSampled && seed == this.seed)
+            return;
+
         this.seed = seed;
         this.rdg.reSeed(seed);
         sample(rdg);
+        seedSampled = true;
+    }
+
+    /**
+     * The realisation of the instance sampled by the current seed, i.e. the actual demands,
+     * deadheading costs and distances. It can be given to another clone of the instance.
+     * @return the realisation.
+     */
+    public Realisation realisation() {
+        return new Realisation(seed, actDemandMap, actDeadheadingCostMap, actCostMatrix, actDistMatrix);
+    }
+
+    /**
+     * Set the realisation of the instance sampled by a seed, e.g. by another clone of the instance,
+     * instead of sampling the instance by the seed.
+     * @param realisation the realisation.
+     */
+    public void setRealisation(Realisation realisation) {
+        if (seedSampled && realisation.seed == seed)
+            return;
+
+        seed = realisation.seed;
+        rdg.reSeed(seed);
+        actDemandMap.putAll(realisation.actDemandMap);
+        actDeadheadingCostMap.putAll(realisation.actDeadheadingCostMap);
+        // the matrices are not modified in place, but replaced by each sampling
+        actCostMatrix = realisation.actCostMatrix;
+        actDistMatrix = realisation.actDistMatrix;
+        expectedValueSampled = false;
+        seedSampled = true;
     }
 
     public String getName() {
@@ -209,6 +270,7 @@ public class Instance {
     public void reset() {
         this.rdg.reSeed(seed);
         sample(rdg);
+        seedSampled = true;
     }
 
     public void calcTaskToTaskMap() {
@@ -277,7 +339,7 @@ public class Instance {
             List<Integer> nodes = new ArrayList<>();
             for (int i = 1; i < numNodes+1; i++)
                 nodes.add(i);
-            Map<Pair<Integer, Integer>, Arc> arcMap = new HashMap<>();
+            Map<Pair<Integer, Integer>, Arc> arcMap = new LinkedHashMap<>();
             for (int i = 0; i < numReq; i++) {
                 line = reader.readLine();
                 segments = line.split("[,()\\s]+");
@@ -391,7 +453,7 @@ public class Instance {
             List<Integer> nodes = new ArrayList<>();
             for (int i = 1; i < numNodes+1; i++)
                 nodes.add(i);
-            Map<Pair<Integer, Integer>, Arc> arcMap = new HashMap<>();
+            Map<Pair<Integer, Integer>, Arc> arcMap = new LinkedHashMap<>();
             for (int i = 0; i < numReq; i++) {
                 line = reader.readLine();
                 segments = line.split("[,()\\s]+");
@@ -480,7 +542,7 @@ public class Instance {
             nodes.add(i);
 
         // randomly generate the arcs
-        Map<Pair<Integer, Integer>, Arc> arcMap = new HashMap<>();
+        Map<Pair<Integer, Integer>, Arc> arcMap = new LinkedHashMap<>();
         for (int from = 1; from < numNodes; from++) {
             for (int to = from+1; to < numNodes+1; to++) {
                 double cost = rdg.nextUniform(1, maxCost);
@@ -507,9 +569,30 @@ public class Instance {
 
     /**
      * Randomly sample a realised instance for the uncertain CARP instance.
+     * For an expected-value instance, the expected values are used instead.
      * @param rdg the random data generator.
      */
     public void sample(RandomDataGenerator rdg) {
+        seedSampled = false;
+
+        if (expectedValue) {
+            if (expectedValueSampled)
+                return;
+
+            for (Arc arc : graph.getArcMap().values())
+                actDeadheadingCostMap.put(arc, arc.getExpectedDeadheadingCost());
+
+            for (Arc task : tasks)
+                actDemandMap.put(task, task.getExpectedDemand());
+
+            calcActDistMatrix();
+            expectedValueSampled = true;
+            return;
+        }
+
+        expectedValueSampled = false;
+
+        // the arc map keeps the order of the arcs read, so the same seed gives the same sample in every JVM
         for (Arc arc : graph.getArcMap().values()) {
             double sampledDeadheadingCost = arc.sampleDeadheadingCost(rdg);
             actDeadheadingCostMap.put(arc, sampledDeadheadingCost);
@@ -623,8 +706,43 @@ public class Instance {
         return str;
     }
 
+    /**
+     * Clone the instance with a cloned graph, so that the clone can be sampled and
+     * simulated independently (e.g. by another thread). The arcs and tasks are shared.
+     * @return the cloned instance.
+     */
     public Instance clone() {
-        return new Instance(graph, tasks, depot, depotLoop, capacity, numVehicles,
+        Instance cloned = new Instance(graph.clone(), tasks, depot, depotLoop, capacity, numVehicles,
                 demandUncertaintyLevel, costUncertaintyLevel);
+        cloned.setName(name);
+        cloned.setExpectedValue(expectedValue);
+
+        return cloned;
+    }
+
+    /**
+     * A realisation of an instance sampled by a seed: the actual demands, deadheading costs and distances.
+     * It is immutable, so it can be shared by the threads. The arcs are shared by the clones of an instance,
+     * so a realisation sampled by one clone can be set to another.
+     */
+    public static class Realisation {
+        private final long seed;
+        private final Map<Arc, Double> actDemandMap;
+        private final Map<Arc, Double> actDeadheadingCostMap;
+        private final double[][] actCostMatrix;
+        private final double[][] actDistMatrix;
+
+        private Realisation(long seed, Map<Arc, Double> actDemandMap, Map<Arc, Double> actDeadheadingCostMap,
+                            double[][] actCostMatrix, double[][] actDistMatrix) {
+            this.seed = seed;
+            this.actDemandMap = new HashMap<>(actDemandMap);
+            this.actDeadheadingCostMap = new HashMap<>(actDeadheadingCostMap);
+            this.actCostMatrix = actCostMatrix;
+            this.actDistMatrix = actDistMatrix;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
     }
 }
@@ -2,7 +2,9 @@ package gphhucarp.decisionprocess;
 
 import gphhucarp.algorithm.pilotsearch.PilotSearcher;
 import gphhucarp.algorithm.pilotsearch.event.PilotSearchRefillEvent;
+import gphhucarp.core.Arc;
 import gphhucarp.core.Instance;
+import gphhucarp.core.Objective;
 import gphhucarp.decisionprocess.proreactive.ProreativeDecisionProcess;
 import gphhucarp.decisionprocess.proreactive.event.ProreactiveServingEvent;
 import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
@@ -11,6 +13,7 @@ import gphhucarp.representation.Solution;
 import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.representation.route.TaskSeqRoute;
 
+import java.util.List;
 import java.util.PriorityQueue;
 
 /**
@@ -21,6 +24,17 @@ import java.util.PriorityQueue;
  *  - An event queue: the events to happen
  *  - A routing policy that makes decisions as the vehicles go.
  *  - A task sequence solution as a predefined plan. This is used for proactive-reactive decision process.
+ *
+ * Optionally, a cutoff can be set on an objective. Then the process is terminated early
+ * once the lower bound of the objective value exceeds the cutoff, since its outcome is
+ * already known to be worse than the cutoff.
+ *
+ * Optionally, the decision situations can be recorded during the runs,
+ * e.g. to characterise the phenotypes of the routing policies.
+ *
+ * Instead of a run, the process can also be stepped from one decision to the next,
+ * and the decisions are made outside the process, e.g. for a number of processes together
+ * (see ReactiveDecisionProcessBatch). Stepping has no cutoff and no recording.
  */
 
 public abstract class DecisionProcess {
@@ -29,6 +43,14 @@ public abstract class DecisionProcess {
     protected RoutingPolicy routingPolicy;
     protected Solution<TaskSeqRoute> plan;
 
+    protected Objective cutoffObjective;
+    protected double cutoff = Double.POSITIVE_INFINITY;
+    protected boolean terminated; // whether the last run was terminated by the cutoff
+
+    protected List<DecisionSituation> recordedDecisionSituations; // null if not recording
+
+    private DecisionProcessEvent decisionEvent; // the event of the decision prepared by stepping
+
     public DecisionProcess(DecisionProcessState state,
                            PriorityQueue<DecisionProcessEvent> eventQueue,
                            RoutingPolicy routingPolicy,
@@ -55,6 +77,50 @@ public abstract class DecisionProcess {
         this.routingPolicy = routingPolicy;
     }
 
+    public boolean isCostOnly() {
+        return state.isCostOnly();
+    }
+
+    /**
+     * Set whether the decision process is cost-only, i.e. only the demands, costs
+     * and current nodes of the routes are maintained, without recording the node sequences.
+     * A cost-only process is sufficient to calculate the objective values, e.g. for fitness evaluation,
+     * while the full solution is required for output.
+     * @param costOnly true if cost-only, and false otherwise.
+     */
+    public void setCostOnly(boolean costOnly) {
+        state.setCostOnly(costOnly);
+    }
+
+    /**
+     * Set a cutoff on an objective. The following runs are terminated early
+     * once the lower bound of the objective value exceeds the cutoff.
+     * @param cutoffObjective the objective.
+     * @param cutoff the cutoff.
+     */
+    public void setCutoff(Objective cutoffObjective, double cutoff) {
+        this.cutoffObjective = cutoffObjective;
+        this.cutoff = cutoff;
+    }
+
+    public void removeCutoff() {
+        cutoffObjective = null;
+        cutoff = Double.POSITIVE_INFINITY;
+    }
+
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Record the decision situations of the following runs into a list.
+     * @param recordedDecisionSituations the list to store the decision situations,
+     *                                   or null to stop recording.
+     */
+    public void setRecordedDecisionSituations(List<DecisionSituation> recordedDecisionSituations) {
+        this.recordedDecisionSituations = recordedDecisionSituations;
+    }
+
     public Solution<TaskSeqRoute> getPlan() {
         return plan;
     }
@@ -73,7 +139,8 @@ public abstract class DecisionProcess {
     public static ReactiveDecisionProcess initReactive(Instance instance,
                                                        long seed,
                                                        RoutingPolicy routingPolicy) {
-        DecisionProcessState state = new DecisionProcessState(instance, seed);
+        DecisionProcessState state = new DecisionProcessState(instance, seed,
+                routingPolicy.requiredStateProducts());
         PriorityQueue<DecisionProcessEvent> eventQueue = new PriorityQueue<>();
         for (NodeSeqRoute route : state.getSolution().getRoutes())
             eventQueue.add(new ReactiveRefillEvent(0, route));
@@ -93,7 +160,8 @@ public abstract class DecisionProcess {
                                                             long seed,
                                                             RoutingPolicy routingPolicy,
                                                             Solution<TaskSeqRoute> plan) {
-        DecisionProcessState state = new DecisionProcessState(instance, seed, plan.getRoutes().size());
+        DecisionProcessState state = new DecisionProcessState(instance, seed,
+                plan.getRoutes().size(), routingPolicy.requiredStateProducts());
         PriorityQueue<DecisionProcessEvent> eventQueue = new PriorityQueue<>();
         for (int i = 0; i < plan.getRoutes().size(); i++)
             eventQueue.add(new ProreactiveServingEvent(0,
@@ -114,7 +182,8 @@ public abstract class DecisionProcess {
                                                              long seed,
                                                              RoutingPolicy routingPolicy,
                                                              PilotSearcher pilotSearcher) {
-        DecisionProcessState state = new DecisionProcessState(instance, seed);
+        DecisionProcessState state = new DecisionProcessState(instance, seed,
+                routingPolicy.requiredStateProducts());
         PriorityQueue<DecisionProcessEvent> eventQueue = new PriorityQueue<>();
         for (NodeSeqRoute route : state.getSolution().getRoutes())
             eventQueue.add(new PilotSearchRefillEvent(0, route, pilotSearcher));
@@ -124,21 +193,92 @@ public abstract class DecisionProcess {
 
     /**
      * Run the decision process.
+     * If a cutoff is set, the run is terminated once the lower bound of
+     * the objective value exceeds the cutoff. Then the remaining events stay
+     * in the queue until the next reset.
      */
     public void run() {
         // first sample the random variables by the seed.
-        state.getInstance().setSeed(state.getSeed());
+        start();
+
+        boolean checkCutoff = cutoffObjective != null && cutoff < Double.POSITIVE_INFINITY;
 
         // trigger the events.
         while (!eventQueue.isEmpty()) {
             DecisionProcessEvent event = eventQueue.poll();
+
+            if (recordedDecisionSituations != null)
+                event.recordDecisionSituation(this, recordedDecisionSituations);
+
             event.trigger(this);
+
+            if (checkCutoff && state.objLowerBound(cutoffObjective) > cutoff) {
+                terminated = true;
+                break;
+            }
         }
     }
 
+    /**
+     * Start a run: sample the random variables by the seed.
+     */
+    public void start() {
+        state.getInstance().setSeed(state.getSeed());
+
+        terminated = false;
+        decisionEvent = null;
+    }
+
+    /**
+     * Step the started process to its next decision: trigger the events until an event
+     * makes a decision, and prepare the decision of the event instead of making it.
+     * The decision is then made by makeDecision.
+     * @return the situation of the next decision, or null if the process is finished.
+     */
+    public DecisionSituation nextDecision() {
+        while (!eventQueue.isEmpty()) {
+            DecisionProcessEvent event = eventQueue.poll();
+            DecisionSituation decisionSituation = event.prepareDecision(this);
+
+            if (decisionSituation != null) {
+                decisionEvent = event;
+                return decisionSituation;
+            }
+
+            event.trigger(this);
+        }
+
+        return null;
+    }
+
+    /**
+     * Make the decision prepared by nextDecision.
+     * @param nextTask the next task selected for the decision situation.
+     */
+    public void makeDecision(Arc nextTask) {
+        DecisionProcessEvent event = decisionEvent;
+        decisionEvent = null;
+
+        event.applyDecision(this, nextTask);
+    }
+
     /**
      * Reset the decision process.
      * This is done by reseting the decision process state and event queue.
      */
     public abstract void reset();
+
+    /**
+     * Reset the decision process for another run with a new seed and routing policy.
+     * The state is reused rather than created again, and it maintains the
+     * products required by the new routing policy.
+     * @param seed the new seed.
+     * @param routingPolicy the new routing policy.
+     */
+    public void reset(long seed, RoutingPolicy routingPolicy) {
+        this.routingPolicy = routingPolicy;
+        state.setSeed(seed);
+        state.setProducts(routingPolicy.requiredStateProducts());
+        reset();
+    }
 }
@@ -1,5 +1,7 @@
 package gphhucarp.decisionprocess;
 
+import gphhucarp.core.Arc;
+
 import java.util.List;
 
 /**
@@ -25,12 +27,39 @@ public abstract class DecisionProcessEvent implements Comparable<DecisionProcess
     /**
      * Record the decision situation if a decision is to be made in this event.
      * Add this decision situation to the list.
+     * It is called before the event is triggered, so the recorded situation must be
+     * a copy of the situation at the decision, which is not changed by the process afterwards.
+     * @param decisionProcess the decision process.
      * @param decisionSituations the decision situations to store the records.
      */
-    public void recordDecisionSituation(List<DecisionSituation> decisionSituations) {
+    public void recordDecisionSituation(DecisionProcess decisionProcess,
+                                        List<DecisionSituation> decisionSituations) {
         // default do nothing
     }
 
+    /**
+     * Prepare the decision to be made in this event, if any, instead of triggering the event.
+     * The state is updated up to the decision (e.g. the refill and the route-to-task map),
+     * so that the decision can be made outside the event, e.g. together with the decisions
+     * of other decision processes, and then applied by applyDecision.
+     * By default, no decision is made in the event.
+     * @param decisionProcess the decision process.
+     * @return the decision situation, or null if no decision is made in this event.
+     */
+    public DecisionSituation prepareDecision(DecisionProcess decisionProcess) {
+        return null;
+    }
+
+    /**
+     * Apply the decision prepared by prepareDecision, i.e. finish triggering the event
+     * with the next task selected.
+     * @param decisionProcess the decision process.
+     * @param nextTask the next task selected, or null if no task is selected.
+     */
+    public void applyDecision(DecisionProcess decisionProcess, Arc nextTask) {
+        throw new UnsupportedOperationException("No decision is made in " + getClass().getSimpleName());
+    }
+
     @Override
     public int compareTo(DecisionProcessEvent o) {
         if (time < o.time)
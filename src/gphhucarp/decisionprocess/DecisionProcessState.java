@@ -41,25 +41,62 @@ public class DecisionProcessState {
     // the value for each task is a list of tasks where the key task is on their flood
     private Map<Arc, List<Arc>> onFloodMap;
 
+    // the products (maps above) maintained by this state, only the ones required by the policy
+    private Set<StateProduct> products;
+
+    private boolean costOnly; // whether the node sequences of the routes are not recorded
+
+    // the serving cost of the remaining demands, a lower bound of the total cost still to come
+    private double remainingServeCost;
+
+    // the templates of the flood maps, calculated once since they only depend on the graph
+    private Map<Arc, List<Arc>> floodMapTemplate;
+    private Map<Arc, List<Arc>> onFloodMapTemplate;
+
+    // the changes since the initial state, which are undone by reset
+    private Set<Arc> completedTasks; // the tasks (and inverses) completed so far
+    private List<Arc> dirtyDemandFracTasks; // the tasks whose remaining demand fractions are set
+
+    // the route-to-task map is sorted lazily, only for the tasks whose lists are accessed
+    private NodeSeqRoute routeToTaskMapRoute; // the current route of the latest calculation
+    private Set<Arc> routeToTaskMapSorted; // the tasks whose lists have been sorted for it
 
     public DecisionProcessState(Instance instance,
                                 long seed,
                                 List<Arc> remainingTasks,
                                 List<Arc> unassignedTasks,
                                 Solution<NodeSeqRoute> solution,
-                                Map<Arc, Double> taskRemainingDemandFrac) {
+                                Map<Arc, Double> taskRemainingDemandFrac,
+                                Set<StateProduct> products) {
         this.instance = instance;
         this.seed = seed;
         this.remainingTasks = remainingTasks;
         this.unassignedTasks = unassignedTasks;
         this.solution = solution;
         this.taskRemainingDemandFrac = taskRemainingDemandFrac;
+        this.products = products;
+        completedTasks = new HashSet<>();
+        // the given fractions are not necessarily initial, so all are restored by reset
+        dirtyDemandFracTasks = new ArrayList<>(instance.getTasks());
+        remainingServeCost = 0;
+        for (Arc task : instance.getTasks())
+            remainingServeCost += pairServeCostWeight(task) * task.getServeCost() * pairRemainingDemandFrac(task);
 
         initTaskToTaskMap();
         initRouteToTaskMap();
         initFloodMaps();
     }
 
+    public DecisionProcessState(Instance instance,
+                                long seed,
+                                List<Arc> remainingTasks,
+                                List<Arc> unassignedTasks,
+                                Solution<NodeSeqRoute> solution,
+                                Map<Arc, Double> taskRemainingDemandFrac) {
+        this(instance, seed, remainingTasks, unassignedTasks, solution,
+                taskRemainingDemandFrac, EnumSet.allOf(StateProduct.class));
+    }
+
     /**
      * Construct the state by an instance.
      * Initially, all the routes starts from the depot,
@@ -67,10 +104,13 @@ public class DecisionProcessState {
      * @param instance the instance.
      * @param seed the seed.
      * @param numRoutes the number of routes.
+     * @param products the state products to maintain.
      */
-    public DecisionProcessState(Instance instance, long seed, int numRoutes) {
+    public DecisionProcessState(Instance instance, long seed, int numRoutes,
+                                Set<StateProduct> products) {
         this.instance = instance;
         this.seed = seed;
+        this.products = products;
         remainingTasks = new LinkedList<>(instance.getTasks());
         unassignedTasks = new LinkedList<>(remainingTasks);
         solution = Solution.initialNodeSeqSolution(instance, numRoutes);
@@ -79,12 +119,23 @@ public class DecisionProcessState {
         taskRemainingDemandFrac = new HashMap<>();
         for (Arc task : remainingTasks)
             taskRemainingDemandFrac.put(task, 1.0);
+        completedTasks = new HashSet<>();
+        dirtyDemandFracTasks = new ArrayList<>();
+        remainingServeCost = totalServeCost(instance);
 
         initTaskToTaskMap();
         initRouteToTaskMap();
         initFloodMaps();
     }
 
+    public DecisionProcessState(Instance instance, long seed, int numRoutes) {
+        this(instance, seed, numRoutes, EnumSet.allOf(StateProduct.class));
+    }
+
+    public DecisionProcessState(Instance instance, long seed, Set<StateProduct> products) {
+        this(instance, seed, instance.getNumVehicles(), products);
+    }
+
     public DecisionProcessState(Instance instance, long seed) {
         this(instance, seed, instance.getNumVehicles());
     }
@@ -113,6 +164,22 @@ public class DecisionProcessState {
         return solution;
     }
 
+    public boolean isCostOnly() {
+        return costOnly;
+    }
+
+    /**
+     * Set whether the state is cost-only. A cost-only state does not record
+     * the node sequences of its routes, but only their demands, costs and current nodes.
+     * This is enough for the objective values, but not for printing the solution.
+     * @param costOnly true if cost-only, and false otherwise.
+     */
+    public void setCostOnly(boolean costOnly) {
+        this.costOnly = costOnly;
+        for (NodeSeqRoute route : solution.getRoutes())
+            route.setRecording(!costOnly);
+    }
+
     public Map<Arc, Double> getTaskRemainingDemandFracMap() {
         return taskRemainingDemandFrac;
     }
@@ -122,25 +189,167 @@ public class DecisionProcessState {
     }
 
     public void setTaskRemainingDemandFrac(Arc task, double frac) {
+        double oldPairFrac = pairRemainingDemandFrac(task);
         taskRemainingDemandFrac.put(task, frac);
+        dirtyDemandFracTasks.add(task);
+
+        remainingServeCost -= task.getServeCost() * (oldPairFrac - pairRemainingDemandFrac(task));
+    }
+
+    /**
+     * The remaining demand fraction of a task and its inverse, i.e. the undirected task.
+     * Only one direction of the task is served, so it is the minimum of both directions.
+     * @param task the task.
+     * @return the remaining demand fraction of the undirected task.
+     */
+    private double pairRemainingDemandFrac(Arc task) {
+        Double frac = taskRemainingDemandFrac.get(task);
+        Double inverseFrac = taskRemainingDemandFrac.get(task.getInverse());
+
+        if (frac == null)
+            frac = 1.0;
+
+        if (inverseFrac == null || inverseFrac > frac)
+            return frac;
+
+        return inverseFrac;
+    }
+
+    /**
+     * The weight of a task in the sum of the serving costs over the tasks.
+     * An undirected task appears twice in the task list, so each direction counts a half.
+     * @param task the task.
+     * @return the weight of the task.
+     */
+    private static double pairServeCostWeight(Arc task) {
+        return (task.getInverse() == null) ? 1 : 0.5;
+    }
+
+    /**
+     * Calculate the total serving cost of all the tasks of an instance.
+     * @param instance the instance.
+     * @return the total serving cost.
+     */
+    private static double totalServeCost(Instance instance) {
+        double total = 0;
+        for (Arc task : instance.getTasks())
+            total += pairServeCostWeight(task) * task.getServeCost();
+
+        return total;
+    }
+
+    /**
+     * The lower bound of the final objective value of the decision process from this state.
+     * The costs only grow during the decision process. Therefore,
+     *  - the total cost is at least the current total cost plus the serving cost of the remaining demands,
+     *  - the max route cost is at least the current max route cost.
+     * @param objective the objective.
+     * @return the lower bound of the objective value.
+     */
+    public double objLowerBound(Objective objective) {
+        switch (objective) {
+            case TOTAL_COST:
+                return solution.totalCost() + remainingServeCost;
+            case MAX_ROUTE_COST:
+                return solution.maxRouteCost();
+            default:
+                return Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * The lower bound of an objective value in the initial state of an instance,
+     * i.e. before any task is served.
+     * @param instance the instance.
+     * @param objective the objective.
+     * @return the lower bound of the objective value.
+     */
+    public static double initObjLowerBound(Instance instance, Objective objective) {
+        switch (objective) {
+            case TOTAL_COST:
+                return totalServeCost(instance);
+            case MAX_ROUTE_COST:
+                return 0;
+            default:
+                return Double.NEGATIVE_INFINITY;
+        }
     }
 
     public Map<Arc, List<Arc>> getTaskToTaskMap() {
+        if (hasProduct(StateProduct.TASK_TO_TASK_MAP)) {
+            getTaskAdjacencyList(instance.getDepotLoop());
+            for (Arc task : instance.getTasks())
+                getTaskAdjacencyList(task);
+        }
+
         return taskToTaskMap;
     }
 
     public Map<Arc, List<NodeSeqRoute>> getRouteToTaskMap() {
+        for (Arc task : instance.getTasks())
+            sortRouteAdjacencyList(task);
+
         return routeToTaskMap;
     }
 
+    /**
+     * Get the task adjacency list of a task, i.e. the remaining tasks sorted
+     * in the increasing order of distance from the task.
+     * The list is copied from the instance template on the first access,
+     * excluding the tasks completed so far.
+     * @param task the task.
+     * @return the task adjacency list, or null if the task is completed.
+     */
     public List<Arc> getTaskAdjacencyList(Arc task) {
-        return taskToTaskMap.get(task);
+        List<Arc> taskAdjacencyList = taskToTaskMap.get(task);
+
+        if (taskAdjacencyList != null
+                || !hasProduct(StateProduct.TASK_TO_TASK_MAP)
+                || completedTasks.contains(task))
+            return taskAdjacencyList;
+
+        List<Arc> template = instance.getTaskToTaskMap().get(task);
+
+        if (template == null)
+            return null;
+
+        taskAdjacencyList = new LinkedList<>();
+        for (Arc anotherTask : template) {
+            if (!completedTasks.contains(anotherTask))
+                taskAdjacencyList.add(anotherTask);
+        }
+        taskToTaskMap.put(task, taskAdjacencyList);
+
+        return taskAdjacencyList;
     }
 
     public List<NodeSeqRoute> getRouteAdjacencyList(Arc task) {
+        sortRouteAdjacencyList(task);
+
         return routeToTaskMap.get(task);
     }
 
+    public Set<StateProduct> getProducts() {
+        return products;
+    }
+
+    /**
+     * Set the products to maintain. The maps are rebuilt accordingly at the next reset.
+     * @param products the products.
+     */
+    public void setProducts(Set<StateProduct> products) {
+        this.products = products;
+    }
+
+    /**
+     * Whether a product is maintained by this state.
+     * @param product the product.
+     * @return true if the product is maintained, and false otherwise.
+     */
+    public boolean hasProduct(StateProduct product) {
+        return products.contains(product);
+    }
+
     public Map<Arc, List<Arc>> getFloodMap() {
         return floodMap;
     }
@@ -176,36 +385,29 @@ public class DecisionProcessState {
     }
 
     /**
-     * Initialise the task-to-task map by deep cloning from the graph.
+     * Initialise the task-to-task map.
+     * The adjacency lists are copied from the instance lazily, when they are first accessed.
      */
     public void initTaskToTaskMap() {
         taskToTaskMap = new HashMap<>();
-        taskToTaskMap.put(instance.getDepotLoop(),
-                instance.getTaskToTaskMap().get(instance.getDepotLoop()));
-        for (Arc task : instance.getTasks())
-            taskToTaskMap.put(task, new LinkedList<>(instance.getTaskToTaskMap().get(task)));
     }
 
     /**
      * Reset the task-to-task map. Clear the map instead of creating a new one.
+     * Only the adjacency lists accessed in the previous run are dropped.
      */
     public void resetTaskToTaskMap() {
         taskToTaskMap.clear();
-        taskToTaskMap.put(instance.getDepotLoop(),
-                instance.getTaskToTaskMap().get(instance.getDepotLoop()));
-        for (Arc task : instance.getTasks())
-            taskToTaskMap.put(task, new LinkedList<>(instance.getTaskToTaskMap().get(task)));
     }
 
     /**
      * Initialise the route-to-task map.
+     * The route adjacency lists are created lazily, when they are first accessed.
      */
     public void initRouteToTaskMap() {
         routeToTaskMap = new HashMap<>();
-        for (Arc task : instance.getTasks()) {
-            List<NodeSeqRoute> routeAdjacencyList = new LinkedList<>();
-            routeToTaskMap.put(task, routeAdjacencyList);
-        }
+        routeToTaskMapRoute = null;
+        routeToTaskMapSorted = new HashSet<>();
     }
 
     /**
@@ -213,51 +415,64 @@ public class DecisionProcessState {
      */
     public void resetRouteToTaskMap() {
         routeToTaskMap.clear();
-        for (Arc task : instance.getTasks()) {
-            List<NodeSeqRoute> routeAdjacencyList = new LinkedList<>();
-            routeToTaskMap.put(task, routeAdjacencyList);
-        }
+        routeToTaskMapRoute = null;
+        routeToTaskMapSorted.clear();
     }
 
     /**
      * Initialise the flood maps.
+     * The flood of each task only depends on the graph, so the maps are
+     * calculated once as templates, and copied from the templates afterwards.
      */
     public void initFloodMaps() {
         floodMap = new HashMap<>();
         onFloodMap = new HashMap<>();
 
+        if (!hasProduct(StateProduct.FLOOD_MAPS))
+            return;
+
+        if (floodMapTemplate == null)
+            calcFloodMapTemplates();
+
+        // the flood lists are never modified, so they are shared with the template
         for (Arc task : instance.getTasks()) {
-            floodMap.put(task, new LinkedList<>());
-            onFloodMap.put(task, new LinkedList<>());
+            floodMap.put(task, floodMapTemplate.get(task));
+            onFloodMap.put(task, new LinkedList<>(onFloodMapTemplate.get(task)));
         }
+    }
 
-        for (Arc task : instance.getTasks()) {
-            int curr = task.getTo();
-            while (curr != instance.getDepot()) {
-                int next = instance.getGraph().getPathTo(curr, instance.getDepot());
+    /**
+     * Reset the flood maps.
+     * Only the entries changed by the tasks completed in the previous run are restored.
+     */
+    public void resetFloodMaps() {
+        if (!hasProduct(StateProduct.FLOOD_MAPS) || floodMap.isEmpty()) {
+            initFloodMaps();
+            return;
+        }
 
-                Arc floodTask = instance.getGraph().getArc(curr, next);
+        for (Arc task : completedTasks) {
+            List<Arc> flood = floodMapTemplate.get(task);
 
-                if (floodTask != null && instance.getTasks().contains(floodTask) && !floodTask.equals(task.getInverse())) {
-                    floodMap.get(task).add(floodTask);
-                    onFloodMap.get(floodTask).add(task);
-                }
+            if (flood == null)
+                continue;
 
-                curr = next;
-            }
+            floodMap.put(task, flood);
+            for (Arc floodTask : flood)
+                onFloodMap.put(floodTask, new LinkedList<>(onFloodMapTemplate.get(floodTask)));
         }
     }
 
     /**
-     * Reset the flood maps.
+     * Calculate the flood map templates from the shortest paths to the depot.
      */
-    public void resetFloodMaps() {
-        floodMap.clear();
-        onFloodMap.clear();
+    private void calcFloodMapTemplates() {
+        floodMapTemplate = new HashMap<>();
+        onFloodMapTemplate = new HashMap<>();
 
         for (Arc task : instance.getTasks()) {
-            floodMap.put(task, new LinkedList<>());
-            onFloodMap.put(task, new LinkedList<>());
+            floodMapTemplate.put(task, new LinkedList<>());
+            onFloodMapTemplate.put(task, new LinkedList<>());
         }
 
         for (Arc task : instance.getTasks()) {
@@ -267,9 +482,9 @@ public class DecisionProcessState {
 
                 Arc floodTask = instance.getGraph().getArc(curr, next);
 
-                if (floodTask != null && !floodTask.equals(task.getInverse())) {
-                    floodMap.get(task).add(floodTask);
-                    onFloodMap.get(floodTask).add(task);
+                if (floodTask != null && instance.getTasks().contains(floodTask) && !floodTask.equals(task.getInverse())) {
+                    floodMapTemplate.get(task).add(floodTask);
+                    onFloodMapTemplate.get(floodTask).add(task);
                 }
 
                 curr = next;
@@ -281,78 +496,120 @@ public class DecisionProcessState {
      * Update the task-to-task map and route-to-task map when a task is completed.
      * First, remove the task and its inverse from the task-to-task and route-to-task maps.
      * Then, for each remaining task, remove the task and its inverse from its adjacency list.
+     * Only the maps maintained by this state, and the lists accessed so far are updated.
+     * The others are built without the completed tasks when they are accessed.
      * @param task the completed task.
      */
     public void completeTask(Arc task) {
-        taskToTaskMap.remove(task);
-        taskToTaskMap.remove(task.getInverse());
+        completedTasks.add(task);
+        completedTasks.add(task.getInverse());
+
         routeToTaskMap.remove(task);
         routeToTaskMap.remove(task.getInverse());
 
-        for (Arc anotherTask : taskToTaskMap.keySet()) {
-            taskToTaskMap.get(anotherTask).remove(task);
-            taskToTaskMap.get(anotherTask).remove(task.getInverse());
-        }
+        if (hasProduct(StateProduct.TASK_TO_TASK_MAP)) {
+            taskToTaskMap.remove(task);
+            taskToTaskMap.remove(task.getInverse());
 
-        for (Arc floodTask : floodMap.get(task))
-            onFloodMap.get(floodTask).remove(task);
+            for (List<Arc> taskAdjacencyList : taskToTaskMap.values()) {
+                taskAdjacencyList.remove(task);
+                taskAdjacencyList.remove(task.getInverse());
+            }
+        }
 
-        for (Arc floodTask : floodMap.get(task.getInverse()))
-            onFloodMap.get(floodTask).remove(task.getInverse());
+        if (hasProduct(StateProduct.FLOOD_MAPS)) {
+            for (Arc floodTask : floodMap.get(task))
+                onFloodMap.get(floodTask).remove(task);
 
-        floodMap.remove(task);
-        floodMap.remove(task.getInverse());
+            for (Arc floodTask : floodMap.get(task.getInverse()))
+                onFloodMap.get(floodTask).remove(task.getInverse());
 
+            floodMap.remove(task);
+            floodMap.remove(task.getInverse());
+        }
     }
 
     /**
      * Calculate the route-to-task map with the current route.
      * For each remaining task, the current route is excluded from the map and will be treated separately.
+     * The calculation is lazy: the list of a task is only sorted when it is accessed,
+     * and nothing is done if the route-to-task map is not a product of this state.
      * @param currRoute the current route.
      */
     public void calcRouteToTaskMap(NodeSeqRoute currRoute) {
-        Graph graph = instance.getGraph();
-
-        for (Arc task : routeToTaskMap.keySet()) {
-            List<NodeSeqRoute> routeAdjacencyList = routeToTaskMap.get(task);
+        if (!hasProduct(StateProduct.ROUTE_TO_TASK_MAP))
+            return;
 
-            routeAdjacencyList.clear();
+        routeToTaskMapRoute = currRoute;
+        routeToTaskMapSorted.clear();
+    }
 
-            for (NodeSeqRoute route : solution.getRoutes()) {
-                routeAdjacencyList.add(route);
-            }
+    /**
+     * Sort the route adjacency list of a task for the current route of the
+     * latest route-to-task map calculation, if it has not been sorted yet.
+     * The list is created on the first access of the task.
+     * @param task the task.
+     */
+    private void sortRouteAdjacencyList(Arc task) {
+        if (!hasProduct(StateProduct.ROUTE_TO_TASK_MAP)
+                || !task.isTask() || completedTasks.contains(task))
+            return;
 
-            // exclude the current route id
-            routeAdjacencyList.remove(currRoute);
+        List<NodeSeqRoute> routeAdjacencyList = routeToTaskMap.get(task);
 
-            // sort the routes with the increasing order of
-            // the distance from the next decision node to the task
-            Collections.sort(routeAdjacencyList,
-                    (o1, o2) -> Double.compare(graph.getEstDistance(o1.getNextTask().getTo(), task.getFrom()),
-                            graph.getEstDistance(o2.getNextTask().getTo(), task.getFrom())));
+        if (routeAdjacencyList == null) {
+            routeAdjacencyList = new LinkedList<>();
+            routeToTaskMap.put(task, routeAdjacencyList);
         }
-    }
 
-    public void reset(DecisionProcessState initialState) {
-        remainingTasks.clear();
-        for (Arc task : initialState.remainingTasks) {
+        if (routeToTaskMapRoute == null || !routeToTaskMapSorted.add(task))
+            return;
+
+        Graph graph = instance.getGraph();
+
+        routeAdjacencyList.clear();
+
+        for (NodeSeqRoute route : solution.getRoutes()) {
+            routeAdjacencyList.add(route);
         }
+
+        // exclude the current route id
+        routeAdjacencyList.remove(routeToTaskMapRoute);
+
+        // sort the routes with the increasing order of
+        // the distance from the next decision node to the task
+        Collections.sort(routeAdjacencyList,
+                (o1, o2) -> Double.compare(graph.getEstDistance(o1.getNextTask().getTo(), task.getFrom()),
+                        graph.getEstDistance(o2.getNextTask().getTo(), task.getFrom())));
     }
 
     /**
      * Reset a decision process state as the initial state.
+     * The state is restored in place: only what the previous run has changed,
+     * i.e. the routes, the remaining demand fractions set, the map entries accessed
+     * and the tasks completed, is restored from the instance.
      */
     public void reset() {
-        remainingTasks = new LinkedList<>(instance.getTasks());
-        taskRemainingDemandFrac.clear();
-        for (Arc task : remainingTasks)
+        remainingTasks.clear();
+        remainingTasks.addAll(instance.getTasks());
+        unassignedTasks.clear();
+        unassignedTasks.addAll(instance.getTasks());
+
+        for (Arc task : dirtyDemandFracTasks)
             taskRemainingDemandFrac.put(task, 1.0);
-        unassignedTasks = new LinkedList<>(remainingTasks);
-        solution.reset(instance);
+        dirtyDemandFracTasks.clear();
+        remainingServeCost = totalServeCost(instance);
+
+        for (NodeSeqRoute route : solution.getRoutes()) {
+            route.reset(instance);
+            route.setNextTask(instance.getDepotLoop());
+        }
 
         resetTaskToTaskMap();
         resetRouteToTaskMap();
+        resetFloodMaps();
 
+        completedTasks.clear();
     }
 
     public DecisionProcessState clone() {
@@ -361,7 +618,16 @@ public class DecisionProcessState {
         Solution<NodeSeqRoute> clonedSol = solution.clone();
         Map<Arc, Double> clonedTRDF = new HashMap<>(taskRemainingDemandFrac);
 
-        return new DecisionProcessState(instance, seed,
-                clonedRemTasks, clonedUasTasks, clonedSol, clonedTRDF);
+        DecisionProcessState cloned = new DecisionProcessState(instance, seed,
+                clonedRemTasks, clonedUasTasks, clonedSol, clonedTRDF, products);
+        cloned.costOnly = costOnly;
+
+        // the maps of the cloned state are built without the tasks completed so far
+        for (Arc task : completedTasks) {
+            if (!cloned.completedTasks.contains(task))
+                cloned.completeTask(task);
+        }
+
+        return cloned;
     }
 }
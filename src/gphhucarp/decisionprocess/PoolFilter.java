@@ -3,17 +3,45 @@ package gphhucarp.decisionprocess;
 import gphhucarp.core.Arc;
 import gphhucarp.representation.route.NodeSeqRoute;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A pool filter uses some criteria to filter out tasks from a pool given a state.
  * This is a preprocessing to help improve the effectiveness and efficiency of
  * decision making of routing policy during the decision making process.
+ *
+ * The filtered tasks are written into a given list, so that the decision making
+ * process can reuse the same list for all its decisions without allocation.
  */
 
 public abstract class PoolFilter {
 
-    public abstract List<Arc> filter(List<Arc> pool,
-                                     NodeSeqRoute route,
-                                     DecisionProcessState state);
+    /**
+     * Filter the pool into a new list.
+     * @param pool the pool of tasks.
+     * @param route the current route.
+     * @param state the decision process state.
+     * @return the filtered pool.
+     */
+    public List<Arc> filter(List<Arc> pool,
+                            NodeSeqRoute route,
+                            DecisionProcessState state) {
+        List<Arc> filtered = new ArrayList<>();
+        filter(pool, route, state, filtered);
+
+        return filtered;
+    }
+
+    /**
+     * Filter the pool, and add the filtered tasks to a list in their order in the pool.
+     * @param pool the pool of tasks.
+     * @param route the current route.
+     * @param state the decision process state.
+     * @param filtered the list to add the filtered tasks.
+     */
+    public abstract void filter(List<Arc> pool,
+                                NodeSeqRoute route,
+                                DecisionProcessState state,
+                                List<Arc> filtered);
 }
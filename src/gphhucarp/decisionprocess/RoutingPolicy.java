@@ -6,7 +6,10 @@ import gphhucarp.decisionprocess.reactive.ReactiveDecisionSituation;
 import gphhucarp.decisionprocess.tiebreaker.SimpleTieBreaker;
 import gphhucarp.representation.route.NodeSeqRoute;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A routing policy makes a decision
@@ -18,6 +21,15 @@ public abstract class RoutingPolicy {
     protected PoolFilter poolFilter;
     protected TieBreaker tieBreaker;
 
+    // the priorities of the candidates of the current decision of each thread
+    private static final ThreadLocal<double[]> priorityBuffers = new ThreadLocal<>();
+    // the filtered pool of the current decision of each thread
+    private static final ThreadLocal<List<Arc>> filteredPoolBuffers =
+            ThreadLocal.withInitial(ArrayList::new);
+    // the filtered pools of the current batch of decisions of each thread
+    private static final ThreadLocal<List<List<Arc>>> filteredPoolsBuffers =
+            ThreadLocal.withInitial(ArrayList::new);
+
     public RoutingPolicy(PoolFilter poolFilter, TieBreaker tieBreaker) {
         this.poolFilter = poolFilter;
         this.tieBreaker = tieBreaker;
@@ -48,6 +60,23 @@ public abstract class RoutingPolicy {
         return name;
     }
 
+    /**
+     * The state products (e.g. the route-to-task map) that the policy reads
+     * to calculate the priorities. The decision process only maintains these products.
+     * By default, a policy reads no product.
+     * @return the required state products.
+     */
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.noneOf(StateProduct.class);
+    }
+
+    /**
+     * Prepare the policy before it is applied by multiple threads at the same time,
+     * e.g. calculate the lazily initialised fields. By default, there is nothing to prepare.
+     */
+    public void prepare() {
+    }
+
     /**
      * Given the current decison process state,
      * select the next task to serve by the give route from the pool of tasks.
@@ -55,29 +84,101 @@ public abstract class RoutingPolicy {
      * @return the next task to be served by the route.
      */
     public Arc next(ReactiveDecisionSituation rds) {
-        List<Arc> pool = rds.getPool();
         NodeSeqRoute route = rds.getRoute();
         DecisionProcessState state = rds.getState();
 
-        List<Arc> filteredPool = poolFilter.filter(pool, route, state);
+        List<Arc> filteredPool = filteredPool(rds);
 
         if (filteredPool.isEmpty())
             return null;
 
-        Arc next = filteredPool.get(0);
-        next.setPriority(priority(next, route, state));
+        double[] priorities = priorityBuffer(filteredPool.size());
+
+        priorities(filteredPool, route, state, priorities);
+
+        return select(filteredPool, priorities, 0);
+    }
+
+    /**
+     * Given the decision situations of a batch of decisions, e.g. the decisions of the policy
+     * on different samples in lockstep, select the next task of each decision.
+     * By default, each decision is made separately.
+     * @param rdss the reactive decision situations.
+     * @param numDecisions the number of decisions in the batch.
+     * @param nextTasks the next tasks selected for the decisions.
+     */
+    public void next(ReactiveDecisionSituation[] rdss, int numDecisions, Arc[] nextTasks) {
+        for (int i = 0; i < numDecisions; i++)
+            nextTasks[i] = next(rdss[i]);
+    }
+
+    /**
+     * Select the candidate with the best priority by the tie breaker.
+     * @param candidates the candidates, not empty.
+     * @param priorities the priorities, parallel to the candidates from the offset.
+     * @param offset the offset of the priorities of the candidates.
+     * @return the selected candidate.
+     */
+    protected Arc select(List<Arc> candidates, double[] priorities, int offset) {
+        int next = 0;
+        for (int i = 1; i < candidates.size(); i++) {
+            if (tieBreaker.compare(priorities[offset+i], candidates.get(i),
+                    priorities[offset+next], candidates.get(next)) < 0)
+                next = i;
+        }
+
+        return candidates.get(next);
+    }
+
+    /**
+     * The priority buffer of the current thread, which is reused by all its decisions.
+     * @param size the minimal size of the buffer.
+     * @return the priority buffer.
+     */
+    protected static double[] priorityBuffer(int size) {
+        double[] priorities = priorityBuffers.get();
+        if (priorities == null || priorities.length < size) {
+            priorities = new double[size];
+            priorityBuffers.set(priorities);
+        }
 
-        for (int i = 1; i < filteredPool.size(); i++) {
-            Arc tmp = filteredPool.get(i);
-            tmp.setPriority(priority(tmp, route, state));
+        return priorities;
+    }
 
-            if (Double.compare(tmp.getPriority(), next.getPriority()) < 0 ||
-                    (Double.compare(tmp.getPriority(), next.getPriority()) == 0 &&
-                            tieBreaker.breakTie(tmp, next) < 0))
-                next = tmp;
+    /**
+     * Filter the pool of a decision situation by the pool filter of the policy.
+     * The filtered pool is a list reused by all the decisions of the current thread,
+     * so it is only valid until the next decision of the thread.
+     * @param rds the reactive decision situation.
+     * @return the filtered pool.
+     */
+    protected List<Arc> filteredPool(ReactiveDecisionSituation rds) {
+        List<Arc> filteredPool = filteredPoolBuffers.get();
+        filteredPool.clear();
+        poolFilter.filter(rds.getPool(), rds.getRoute(), rds.getState(), filteredPool);
+
+        return filteredPool;
+    }
+
+    /**
+     * Filter the pools of a batch of decision situations by the pool filter of the policy.
+     * Like the filtered pool, the filtered pools are reused by the current thread.
+     * @param rdss the reactive decision situations.
+     * @param numDecisions the number of decisions in the batch.
+     * @return the filtered pools, one for each decision.
+     */
+    protected List<List<Arc>> filteredPools(ReactiveDecisionSituation[] rdss, int numDecisions) {
+        List<List<Arc>> filteredPools = filteredPoolsBuffers.get();
+        while (filteredPools.size() < numDecisions)
+            filteredPools.add(new ArrayList<>());
+
+        for (int i = 0; i < numDecisions; i++) {
+            List<Arc> filteredPool = filteredPools.get(i);
+            filteredPool.clear();
+            poolFilter.filter(rdss[i].getPool(), rdss[i].getRoute(), rdss[i].getState(), filteredPool);
         }
 
-        return next;
+        return filteredPools.subList(0, numDecisions);
     }
 
     /**
@@ -95,6 +196,25 @@ public abstract class RoutingPolicy {
         return true;
     }
 
+    /**
+     * Calculate the priorities of a batch of candidate tasks for a route given a state.
+     * By default, the priority of each candidate is calculated separately.
+     * @param candidates the candidate tasks.
+     * @param route the route.
+     * @param state the state.
+     * @param priorities the priorities of the candidate tasks.
+     */
+    public void priorities(List<Arc> candidates,
+                           NodeSeqRoute route,
+                           DecisionProcessState state,
+                           double[] priorities) {
+        int i = 0;
+        for (Arc candidate : candidates) {
+            priorities[i] = priority(candidate, route, state);
+            i ++;
+        }
+    }
+
     /**
      * Calculate the priority of a candidate task for a route given a state.
      * @param candidate the candidate task.
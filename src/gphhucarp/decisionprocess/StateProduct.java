@@ -0,0 +1,17 @@
+package gphhucarp.decisionprocess;
+
+/**
+ * An enumeration of the optional products of a decision process state.
+ * A product is an auxiliary structure maintained along the decision process,
+ * which is only useful if some feature of the routing policy reads it.
+ *  - TASK_TO_TASK_MAP: for each task, the remaining tasks sorted by distance.
+ *  - ROUTE_TO_TASK_MAP: for each task, the other routes sorted by distance.
+ *  - FLOOD_MAPS: the flood and on-flood maps of the tasks.
+ */
+
+public enum StateProduct {
+
+    TASK_TO_TASK_MAP,
+    ROUTE_TO_TASK_MAP,
+    FLOOD_MAPS
+}
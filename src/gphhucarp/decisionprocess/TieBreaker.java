@@ -9,4 +9,22 @@ import gphhucarp.core.Arc;
 public abstract class TieBreaker {
 
     public abstract int breakTie(Arc arc1, Arc arc2);
+
+    /**
+     * Compare two candidates with their priorities.
+     * The candidate with the smaller priority is prior to the other.
+     * The tie is broken only if they have the same priority.
+     * @param priority1 the priority of the first candidate.
+     * @param arc1 the first candidate.
+     * @param priority2 the priority of the second candidate.
+     * @param arc2 the second candidate.
+     * @return negative if the first candidate is prior to the second, and positive otherwise.
+     */
+    public int compare(double priority1, Arc arc1, double priority2, Arc arc2) {
+        int cmp = Double.compare(priority1, priority2);
+        if (cmp != 0)
+            return cmp;
+
+        return breakTie(arc1, arc2);
+    }
 }
@@ -5,7 +5,6 @@ import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.PoolFilter;
 import gphhucarp.representation.route.NodeSeqRoute;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,12 +16,12 @@ import java.util.List;
 public class ActFeasiblePoolFilter extends PoolFilter {
 
     @Override
-    public List<Arc> filter(List<Arc> pool,
-                            NodeSeqRoute route,
-                            DecisionProcessState state) {
+    public void filter(List<Arc> pool,
+                       NodeSeqRoute route,
+                       DecisionProcessState state,
+                       List<Arc> filtered) {
         double remainingCapacity = route.getCapacity() - route.getDemand();
 
-        List<Arc> filtered = new ArrayList<>();
         for (Arc candidate : pool) {
             // check if the task is expected to be feasible or not
             if (state.getInstance().getActDemand(candidate) > remainingCapacity)
@@ -30,7 +29,5 @@ public class ActFeasiblePoolFilter extends PoolFilter {
 
             filtered.add(candidate);
         }
-
-        return filtered;
     }
 }
@@ -6,7 +6,6 @@ import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.PoolFilter;
 import gphhucarp.representation.route.NodeSeqRoute;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,33 +18,31 @@ import java.util.List;
 public class ExpFeasibleNoRefillPoolFilter extends PoolFilter {
 
     @Override
-    public List<Arc> filter(List<Arc> pool,
-                            NodeSeqRoute route,
-                            DecisionProcessState state) {
+    public void filter(List<Arc> pool,
+                       NodeSeqRoute route,
+                       DecisionProcessState state,
+                       List<Arc> filtered) {
         int currNode = route.currNode();
         int depot = state.getInstance().getDepot();
         Graph graph = state.getInstance().getGraph();
         double remainingCapacity = route.getCapacity() - route.getDemand();
 
         // if just refilled, then all the tasks are eligible
-        if (currNode == depot)
-            return new ArrayList<>(pool);
+        if (currNode == depot) {
+            filtered.addAll(pool);
+            return;
+        }
 
-        List<Arc> filtered = new ArrayList<>();
         for (Arc candidate : pool) {
             // check if the task is expected to be feasible or not
             if (candidate.getExpectedDemand() > remainingCapacity)
                 continue;
             
             // check if the way to the candidate passes the depot
-            if (graph.getEstDistance(currNode, candidate.getFrom()) ==
-                    graph.getEstDistance(currNode, depot) +
-                            graph.getEstDistance(depot, candidate.getFrom()))
+            if (graph.isPassed(currNode, candidate.getFrom(), depot))
                 continue;
 
             filtered.add(candidate);
         }
-
-        return filtered;
     }
 }
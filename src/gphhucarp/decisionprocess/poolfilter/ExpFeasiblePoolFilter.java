@@ -5,7 +5,6 @@ import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.PoolFilter;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,18 +16,20 @@ import java.util.List;
 public class ExpFeasiblePoolFilter extends PoolFilter {
 
     @Override
-    public List<Arc> filter(List<Arc> pool,
-                            NodeSeqRoute route,
-                            DecisionProcessState state) {
+    public void filter(List<Arc> pool,
+                       NodeSeqRoute route,
+                       DecisionProcessState state,
+                       List<Arc> filtered) {
         int currNode = route.currNode();
         int depot = state.getInstance().getDepot();
         double remainingCapacity = route.getCapacity() - route.getDemand();
 
         // if just refilled, then all the tasks are eligible
-        if (currNode == depot)
-            return new ArrayList<>(pool);
+        if (currNode == depot) {
+            filtered.addAll(pool);
+            return;
+        }
 
-        List<Arc> filtered = new ArrayList<>();
         for (Arc candidate : pool) {
             // check if the task is expected to be feasible or not
             if (candidate.getExpectedDemand() > remainingCapacity)
@@ -36,7 +37,5 @@ public class ExpFeasiblePoolFilter extends PoolFilter {
 
             filtered.add(candidate);
         }
-
-        return filtered;
     }
 }
@@ -6,7 +6,6 @@ import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.PoolFilter;
 import gphhucarp.representation.route.NodeSeqRoute;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,31 +18,29 @@ import java.util.List;
 public class ExpFeasibleWithRefillPoolFilter extends PoolFilter {
 
     @Override
-    public List<Arc> filter(List<Arc> pool,
-                            NodeSeqRoute route,
-                            DecisionProcessState state) {
+    public void filter(List<Arc> pool,
+                       NodeSeqRoute route,
+                       DecisionProcessState state,
+                       List<Arc> filtered) {
         int currNode = route.currNode();
         int depot = state.getInstance().getDepot();
         Graph graph = state.getInstance().getGraph();
         double remainingCapacity = route.getCapacity() - route.getDemand();
 
         // if just refilled, then all the candidates are feasible
-        if (currNode == depot)
-            return pool;
+        if (currNode == depot) {
+            filtered.addAll(pool);
+            return;
+        }
 
-        List<Arc> filtered = new ArrayList<>();
         for (Arc candidate : pool) {
             if (candidate.getExpectedDemand() <= remainingCapacity) {
                 // select if the demand does not exceed remaining capacity
                 filtered.add(candidate);
-            } else if (graph.getEstDistance(currNode, candidate.getFrom()) ==
-                    graph.getEstDistance(currNode, depot) +
-                    graph.getEstDistance(depot, candidate.getFrom())) {
+            } else if (graph.isPassed(currNode, candidate.getFrom(), depot)) {
                 // select if depot is passed along the way
                 filtered.add(candidate);
             }
         }
-
-        return filtered;
     }
 }
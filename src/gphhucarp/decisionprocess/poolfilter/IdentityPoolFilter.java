@@ -20,4 +20,12 @@ public class IdentityPoolFilter extends PoolFilter {
                             DecisionProcessState state) {
         return pool;
     }
+
+    @Override
+    public void filter(List<Arc> pool,
+                       NodeSeqRoute route,
+                       DecisionProcessState state,
+                       List<Arc> filtered) {
+        filtered.addAll(pool);
+    }
 }
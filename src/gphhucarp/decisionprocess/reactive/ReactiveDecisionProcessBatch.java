@@ -0,0 +1,93 @@
+package gphhucarp.decisionprocess.reactive;
+
+import gphhucarp.core.Arc;
+import gphhucarp.decisionprocess.DecisionSituation;
+import gphhucarp.decisionprocess.RoutingPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of reactive decision processes (e.g. on different samples) run by the same routing policy
+ * in lockstep. At each step, every process that has not finished is stepped to its next decision,
+ * and then the decisions of all the processes are made together by the policy,
+ * e.g. the priorities of the candidates of all the decisions are calculated in a single batch.
+ * The processes are independent, so each of them makes the same decisions as in a separate run.
+ *
+ * The processes are run without cutoff and without recording the decision situations.
+ */
+
+public class ReactiveDecisionProcessBatch {
+
+    private List<ReactiveDecisionProcess> decisionProcesses;
+    private RoutingPolicy routingPolicy;
+
+    // the processes that have not finished, and their decision situations and next tasks of the current step
+    private ReactiveDecisionProcess[] running;
+    private ReactiveDecisionSituation[] decisionSituations;
+    private Arc[] nextTasks;
+
+    public ReactiveDecisionProcessBatch(List<ReactiveDecisionProcess> decisionProcesses,
+                                        RoutingPolicy routingPolicy) {
+        this.decisionProcesses = decisionProcesses;
+        this.routingPolicy = routingPolicy;
+    }
+
+    public ReactiveDecisionProcessBatch() {
+        this(new ArrayList<>(), null);
+    }
+
+    public List<ReactiveDecisionProcess> getDecisionProcesses() {
+        return decisionProcesses;
+    }
+
+    public RoutingPolicy getRoutingPolicy() {
+        return routingPolicy;
+    }
+
+    public void setRoutingPolicy(RoutingPolicy routingPolicy) {
+        this.routingPolicy = routingPolicy;
+    }
+
+    /**
+     * Run the decision processes in lockstep until all of them are finished.
+     */
+    public void run() {
+        int numRunning = decisionProcesses.size();
+
+        if (running == null || running.length < numRunning) {
+            running = new ReactiveDecisionProcess[numRunning];
+            decisionSituations = new ReactiveDecisionSituation[numRunning];
+            nextTasks = new Arc[numRunning];
+        }
+
+        for (int i = 0; i < numRunning; i++) {
+            running[i] = decisionProcesses.get(i);
+            running[i].start();
+        }
+
+        while (numRunning > 0) {
+            // step each process to its next decision, and drop the finished processes
+            int numDecisions = 0;
+            for (int i = 0; i < numRunning; i++) {
+                DecisionSituation decisionSituation = running[i].nextDecision();
+
+                if (decisionSituation == null)
+                    continue;
+
+                running[numDecisions] = running[i];
+                decisionSituations[numDecisions] = (ReactiveDecisionSituation)decisionSituation;
+                numDecisions ++;
+            }
+            numRunning = numDecisions;
+
+            if (numDecisions == 0)
+                break;
+
+            routingPolicy.next(decisionSituations, numDecisions, nextTasks);
+
+            for (int i = 0; i < numDecisions; i++)
+                running[i].makeDecision(nextTasks[i]);
+        }
+    }
+}
@@ -36,11 +36,25 @@ public class ReactiveDecisionSituation extends DecisionSituation {
         return state;
     }
 
+    /**
+     * Clone the decision situation. The cloned route is the corresponding route
+     * of the cloned state, and the route-to-task map of the cloned state is calculated with it.
+     * @return the cloned decision situation.
+     */
     public ReactiveDecisionSituation clone() {
         List<Arc> clonedPool = new LinkedList<>(pool);
-        NodeSeqRoute clonedRoute = (NodeSeqRoute)route.clone();
         DecisionProcessState clonedState = state.clone();
 
+        NodeSeqRoute clonedRoute;
+        int routeIndex = state.getSolution().getRoutes().indexOf(route);
+        if (routeIndex < 0) {
+            clonedRoute = (NodeSeqRoute)route.clone();
+        }
+        else {
+            clonedRoute = clonedState.getSolution().getRoute(routeIndex);
+            clonedState.calcRouteToTaskMap(clonedRoute);
+        }
+
         return new ReactiveDecisionSituation(clonedPool, clonedRoute, clonedState);
     }
 }
@@ -8,9 +8,8 @@ import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.decisionprocess.DecisionProcess;
 import gphhucarp.decisionprocess.DecisionProcessEvent;
 import gphhucarp.decisionprocess.DecisionProcessState;
-import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.DecisionSituation;
 
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -33,7 +32,13 @@ public class ReactiveRefillEvent extends DecisionProcessEvent {
 
     @Override
     public void trigger(DecisionProcess decisionProcess) {
-        RoutingPolicy policy = decisionProcess.getRoutingPolicy();
+        ReactiveDecisionSituation rds = prepareDecision(decisionProcess);
+
+        if (rds != null) {
+            applyDecision(decisionProcess, decisionProcess.getRoutingPolicy().next(rds));
+            return;
+        }
+
         DecisionProcessState state = decisionProcess.getState();
         Instance instance = state.getInstance();
         Graph graph = instance.getGraph();
@@ -42,31 +47,8 @@ public class ReactiveRefillEvent extends DecisionProcessEvent {
         int currNode = route.currNode();
 
         if (currNode == depot) {
-            // refill when arriving the depot
-            route.setDemand(0);
-
-            if (state.getUnassignedTasks().isEmpty()) {
-                // if there is no unassigned tasks, then no need to go out again.
-                // stay at the depot and close the route
-                return;
-            }
-
-            // calculate the route-to-task map
-            state.calcRouteToTaskMap(route);
-
-            // decide which task to serve next
-            List<Arc> pool = new LinkedList<>(state.getUnassignedTasks());
-
-            ReactiveDecisionSituation rds = new ReactiveDecisionSituation(
-                    pool, route, state);
-
-            Arc nextTask = policy.next(rds);
-
-            state.removeUnassignedTasks(nextTask);
-            route.setNextTask(nextTask);
-
-            decisionProcess.getEventQueue().add(
-                    new ReactiveServingEvent(route.getCost(), route, nextTask));
+            // the vehicle has been refilled, and there is no unassigned tasks.
+            // no need to go out again. stay at the depot and close the route
         }
         else {
             // continue going to the depot if not arrived yet
@@ -97,4 +79,57 @@ public class ReactiveRefillEvent extends DecisionProcessEvent {
                     new ReactiveRefillEvent(route.getCost(), route));
         }
     }
+
+    /**
+     * A decision is made when arriving the depot, if there are unassigned tasks.
+     * The vehicle is refilled when arriving the depot, whether a decision is made or not.
+     */
+    @Override
+    public ReactiveDecisionSituation prepareDecision(DecisionProcess decisionProcess) {
+        DecisionProcessState state = decisionProcess.getState();
+
+        if (route.currNode() != state.getInstance().getDepot())
+            return null;
+
+        // refill when arriving the depot
+        route.setDemand(0);
+
+        if (state.getUnassignedTasks().isEmpty())
+            return null;
+
+        // calculate the route-to-task map
+        state.calcRouteToTaskMap(route);
+
+        // decide which task to serve next, from the unassigned tasks without copying them
+        return new ReactiveDecisionSituation(state.getUnassignedTasks(), route, state);
+    }
+
+    @Override
+    public void applyDecision(DecisionProcess decisionProcess, Arc nextTask) {
+        DecisionProcessState state = decisionProcess.getState();
+
+        state.removeUnassignedTasks(nextTask);
+        route.setNextTask(nextTask);
+
+        decisionProcess.getEventQueue().add(
+                new ReactiveServingEvent(route.getCost(), route, nextTask));
+    }
+
+    @Override
+    public void recordDecisionSituation(DecisionProcess decisionProcess,
+                                        List<DecisionSituation> decisionSituations) {
+        DecisionProcessState state = decisionProcess.getState();
+
+        // a decision is made only after arriving the depot, if there are unassigned tasks
+        if (route.currNode() != state.getInstance().getDepot() || state.getUnassignedTasks().isEmpty())
+            return;
+
+        // the pool is copied by the clone
+        ReactiveDecisionSituation rds = new ReactiveDecisionSituation(
+                state.getUnassignedTasks(), route, state).clone();
+        // the vehicle is refilled before the decision
+        rds.getRoute().setDemand(0);
+
+        decisionSituations.add(rds);
+    }
 }
@@ -8,10 +8,8 @@ import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.decisionprocess.DecisionProcess;
 import gphhucarp.decisionprocess.DecisionProcessEvent;
 import gphhucarp.decisionprocess.DecisionProcessState;
-import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.DecisionSituation;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -33,7 +31,13 @@ public class ReactiveServingEvent extends DecisionProcessEvent {
 
     @Override
     public void trigger(DecisionProcess decisionProcess) {
-        RoutingPolicy policy = decisionProcess.getRoutingPolicy();
+        ReactiveDecisionSituation rds = prepareDecision(decisionProcess);
+
+        if (rds != null) {
+            applyDecision(decisionProcess, decisionProcess.getRoutingPolicy().next(rds));
+            return;
+        }
+
         DecisionProcessState state = decisionProcess.getState();
         Instance instance = state.getInstance();
         Graph graph = instance.getGraph();
@@ -78,33 +82,6 @@ public class ReactiveServingEvent extends DecisionProcessEvent {
                         new ReactiveServingEvent(route.getCost(), route, nextTask));
             }
         }
-        else if (currNode == nextTask.getTo() &&
-                Double.compare(state.getTaskRemainingDemandFrac(nextTask), 0.0) == 0) {
-            // calculate the route-to-task map
-            state.calcRouteToTaskMap(route);
-
-            // decide which task to serve next
-            List<Arc> pool = new LinkedList<>(state.getUnassignedTasks());
-
-            ReactiveDecisionSituation rds = new ReactiveDecisionSituation(
-                    pool, route, state);
-
-            nextTask = policy.next(rds);
-
-            if (nextTask == null) {
-                // go back to the depot to refill, if the depot loop is selected
-                route.setNextTask(instance.getDepotLoop());
-
-                decisionProcess.getEventQueue().add(
-                        new ReactiveRefillEvent(route.getCost(), route));
-            }
-            else {
-                state.removeUnassignedTasks(nextTask);
-                route.setNextTask(nextTask);
-                decisionProcess.getEventQueue().add(
-                        new ReactiveServingEvent(route.getCost(), route, nextTask));
-            }
-        }
         else {
             // go to the next node if has not arrived the target node yet
             int nextNode = graph.getPathTo(currNode, nextTask.getFrom());
@@ -135,4 +112,67 @@ public class ReactiveServingEvent extends DecisionProcessEvent {
         }
     }
 
+    /**
+     * A decision is made after completing the service of the next task.
+     */
+    @Override
+    public ReactiveDecisionSituation prepareDecision(DecisionProcess decisionProcess) {
+        DecisionProcessState state = decisionProcess.getState();
+        int currNode = route.currNode();
+
+        if (currNode == nextTask.getFrom() || currNode != nextTask.getTo() ||
+                Double.compare(state.getTaskRemainingDemandFrac(nextTask), 0.0) != 0)
+            return null;
+
+        // refill the capacity if the current node is the depot
+        if (currNode == state.getInstance().getDepot())
+            route.setDemand(0);
+
+        // calculate the route-to-task map
+        state.calcRouteToTaskMap(route);
+
+        // decide which task to serve next, from the unassigned tasks without copying them
+        return new ReactiveDecisionSituation(state.getUnassignedTasks(), route, state);
+    }
+
+    @Override
+    public void applyDecision(DecisionProcess decisionProcess, Arc nextTask) {
+        DecisionProcessState state = decisionProcess.getState();
+        Instance instance = state.getInstance();
+
+        if (nextTask == null) {
+            // go back to the depot to refill, if the depot loop is selected
+            route.setNextTask(instance.getDepotLoop());
+
+            decisionProcess.getEventQueue().add(
+                    new ReactiveRefillEvent(route.getCost(), route));
+        }
+        else {
+            state.removeUnassignedTasks(nextTask);
+            route.setNextTask(nextTask);
+            decisionProcess.getEventQueue().add(
+                    new ReactiveServingEvent(route.getCost(), route, nextTask));
+        }
+    }
+
+    @Override
+    public void recordDecisionSituation(DecisionProcess decisionProcess,
+                                        List<DecisionSituation> decisionSituations) {
+        DecisionProcessState state = decisionProcess.getState();
+        int currNode = route.currNode();
+
+        // a decision is made only after completing the service of the next task
+        if (currNode == nextTask.getFrom() || currNode != nextTask.getTo() ||
+                Double.compare(state.getTaskRemainingDemandFrac(nextTask), 0.0) != 0)
+            return;
+
+        // the pool is copied by the clone
+        ReactiveDecisionSituation rds = new ReactiveDecisionSituation(
+                state.getUnassignedTasks(), route, state).clone();
+        // the vehicle is refilled before the decision if it is at the depot
+        if (currNode == state.getInstance().getDepot())
+            rds.getRoute().setDemand(0);
+
+        decisionSituations.add(rds);
+    }
 }
@@ -1,28 +1,57 @@
 package gphhucarp.decisionprocess.routingpolicy;
 
+import ec.gp.GPNode;
 import ec.gp.GPTree;
 import gphhucarp.core.Arc;
 import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.PoolFilter;
 import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.decisionprocess.poolfilter.IdentityPoolFilter;
+import gphhucarp.decisionprocess.reactive.ReactiveDecisionSituation;
 import gphhucarp.gp.CalcPriorityProblem;
-import gputils.DoubleData;
+import gphhucarp.gp.FlattenedTree;
+import gphhucarp.gp.PriorityFunction;
+import gphhucarp.gp.PriorityFunctionCompiler;
+import gphhucarp.gp.StateProductsGatherer;
+import gphhucarp.gp.TreeSimplifier;
+
+import java.util.List;
+import java.util.Set;
 
 /**
  * A GP-evolved routing policy.
+ * The tree is simplified and compiled into a priority function on demand, which calculates the priorities,
+ * either one by one or for all the candidates of a decision in a batch.
+ * The tree can also be given already simplified, e.g. when the simplified tree is needed elsewhere.
+ * The candidates of a batch of decisions (e.g. on different samples in lockstep) are packed together.
  *
  * Created by gphhucarp on 30/08/17.
  */
 public class GPRoutingPolicy extends RoutingPolicy {
 
     private GPTree gpTree;
+    private GPNode simplifiedRoot; // the root of the simplified tree, simplified on demand
+    private Set<StateProduct> requiredStateProducts; // gathered from the tree on demand
+    private PriorityFunctionCompiler compiler;
+    private PriorityFunction priorityFunction; // compiled from the tree on demand
 
-    public GPRoutingPolicy(PoolFilter poolFilter, GPTree gpTree) {
+    public GPRoutingPolicy(PoolFilter poolFilter, GPTree gpTree, GPNode simplifiedRoot,
+                           PriorityFunctionCompiler compiler) {
         super(poolFilter);
         name = "\"GPRoutingPolicy\"";
         this.gpTree = gpTree;
+        this.simplifiedRoot = simplifiedRoot;
+        this.compiler = compiler;
+    }
+
+    public GPRoutingPolicy(PoolFilter poolFilter, GPTree gpTree, PriorityFunctionCompiler compiler) {
+        this(poolFilter, gpTree, null, compiler);
+    }
+
+    public GPRoutingPolicy(PoolFilter poolFilter, GPTree gpTree) {
+        this(poolFilter, gpTree, PriorityFunctionCompiler.DEFAULT);
     }
 
     public GPRoutingPolicy(GPTree gpTree) {
@@ -35,16 +64,94 @@ public class GPRoutingPolicy extends RoutingPolicy {
 
     public void setGPTree(GPTree gpTree) {
         this.gpTree = gpTree;
+        simplifiedRoot = null;
+        requiredStateProducts = null;
+        priorityFunction = null;
+    }
+
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        if (requiredStateProducts == null) {
+            StateProductsGatherer gatherer = new StateProductsGatherer();
+            gpTree.child.numNodes(gatherer);
+            requiredStateProducts = gatherer.getProducts();
+        }
+
+        return requiredStateProducts;
+    }
+
+    /**
+     * Gather the required state products and compile the tree in advance.
+     */
+    @Override
+    public void prepare() {
+        requiredStateProducts();
+        priorityFunction();
+    }
+
+    /**
+     * Get the priority function, compiled from the simplified tree on demand.
+     * @return the priority function.
+     */
+    private PriorityFunction priorityFunction() {
+        if (priorityFunction == null) {
+            if (simplifiedRoot == null)
+                simplifiedRoot = TreeSimplifier.simplify(gpTree.child);
+
+            priorityFunction = compiler.compile(simplifiedRoot);
+        }
+
+        return priorityFunction;
     }
 
     @Override
     public double priority(Arc candidate, NodeSeqRoute route, DecisionProcessState state) {
-        CalcPriorityProblem calcPrioProb =
-                new CalcPriorityProblem(candidate, route, state);
+        CalcPriorityProblem calcPrioProb = FlattenedTree.threadProblem();
+        calcPrioProb.setCandidate(candidate);
+        calcPrioProb.setRoute(route);
+        calcPrioProb.setState(state);
+
+        return priorityFunction().eval(calcPrioProb);
+    }
+
+    @Override
+    public void priorities(List<Arc> candidates,
+                           NodeSeqRoute route,
+                           DecisionProcessState state,
+                           double[] priorities) {
+        CalcPriorityProblem calcPrioProb = FlattenedTree.threadProblem();
+        calcPrioProb.setRoute(route);
+        calcPrioProb.setState(state);
+
+        priorityFunction().evalBatch(calcPrioProb, candidates, priorities);
+    }
+
+    @Override
+    public void next(ReactiveDecisionSituation[] rdss, int numDecisions, Arc[] nextTasks) {
+        List<List<Arc>> filteredPools = filteredPools(rdss, numDecisions);
+
+        int numCandidates = 0;
+        CalcPriorityProblem[] calcPrioProbs = FlattenedTree.threadProblems(numDecisions);
+        for (int i = 0; i < numDecisions; i++) {
+            numCandidates += filteredPools.get(i).size();
+            calcPrioProbs[i].setRoute(rdss[i].getRoute());
+            calcPrioProbs[i].setState(rdss[i].getState());
+        }
+
+        double[] priorities = priorityBuffer(numCandidates);
+        priorityFunction().evalPacked(calcPrioProbs, filteredPools, priorities);
+
+        int offset = 0;
+        for (int i = 0; i < numDecisions; i++) {
+            List<Arc> filteredPool = filteredPools.get(i);
 
-        DoubleData tmp = new DoubleData();
-        gpTree.child.eval(null, 0, tmp, null, null, calcPrioProb);
+            if (filteredPool.isEmpty()) {
+                nextTasks[i] = null;
+                continue;
+            }
 
-        return tmp.value;
+            nextTasks[i] = select(filteredPool, priorities, offset);
+            offset += filteredPool.size();
+        }
     }
 }
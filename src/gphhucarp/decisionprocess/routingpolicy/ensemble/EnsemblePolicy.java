@@ -4,11 +4,14 @@ import gphhucarp.core.Arc;
 import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.PoolFilter;
 import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.decisionprocess.TieBreaker;
 import gphhucarp.decisionprocess.reactive.ReactiveDecisionSituation;
 import gphhucarp.representation.route.NodeSeqRoute;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class EnsemblePolicy extends RoutingPolicy {
 
@@ -100,18 +103,41 @@ public class EnsemblePolicy extends RoutingPolicy {
         return policies.length;
     }
 
+    /**
+     * The ensemble requires the union of the state products required by its elements.
+     * @return the required state products.
+     */
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        Set<StateProduct> products = EnumSet.noneOf(StateProduct.class);
+        for (RoutingPolicy policy : policies)
+            products.addAll(policy.requiredStateProducts());
+
+        return products;
+    }
+
+    @Override
+    public void prepare() {
+        for (RoutingPolicy policy : policies)
+            policy.prepare();
+    }
+
+    /**
+     * The pool is filtered once, and the filtered pool is shared by all the elements.
+     * @param rds the reactive decision situation.
+     * @return the next task to be served by the route.
+     */
     @Override
     public Arc next(ReactiveDecisionSituation rds) {
-        List<Arc> pool = rds.getPool();
         NodeSeqRoute route = rds.getRoute();
         DecisionProcessState state = rds.getState();
 
-        List<Arc> filteredPool = poolFilter.filter(pool, route, state);
+        List<Arc> filteredPool = filteredPool(rds);
 
         if (filteredPool.isEmpty())
             return null;
 
-        Arc next = combiner.next(pool, route, state, this);
+        Arc next = combiner.next(filteredPool, route, state, this);
 
         return next;
     }
@@ -17,27 +17,28 @@ import java.util.List;
 
 public class MajorityVoter extends Combiner {
 
+    // the element priorities of the current decision of each thread
+    private static final ThreadLocal<double[]> priorityBuffers = new ThreadLocal<>();
+
     @Override
     public Arc next(List<Arc> pool, NodeSeqRoute route, DecisionProcessState state, EnsemblePolicy ensemblePolicy) {
         int[] votes = new int[pool.size()];
 
+        double[] priorities = priorityBuffers.get();
+        if (priorities == null || priorities.length < pool.size()) {
+            priorities = new double[pool.size()];
+            priorityBuffers.set(priorities);
+        }
+
         for (int ele = 0; ele < ensemblePolicy.size(); ele++) {
             RoutingPolicy policy = ensemblePolicy.getPolicy(ele);
+            policy.priorities(pool, route, state, priorities);
 
             int bestIdx = 0;
-            Arc best = pool.get(bestIdx);
-            best.setPriority(policy.priority(best, route, state));
-
             for (int i = 1; i < pool.size(); i++) {
-                Arc tmp = pool.get(i);
-                tmp.setPriority(policy.priority(tmp, route, state));
-
-                if (Double.compare(tmp.getPriority(), best.getPriority()) < 0 ||
-                        (Double.compare(tmp.getPriority(), best.getPriority()) == 0 &&
-                                policy.getTieBreaker().breakTie(tmp, best) < 0)) {
+                if (policy.getTieBreaker().compare(priorities[i], pool.get(i),
+                        priorities[bestIdx], pool.get(bestIdx)) < 0)
                     bestIdx = i;
-                    best = tmp;
-                }
             }
 
             votes[bestIdx] += ensemblePolicy.getWeight(ele);
@@ -0,0 +1,352 @@
+package gphhucarp.gp;
+
+import ec.BreedingPipeline;
+import ec.EvolutionState;
+import ec.Individual;
+import ec.SelectionMethod;
+import ec.Subpopulation;
+import ec.simple.SimpleProblemForm;
+import ec.steadystate.QueueIndividual;
+import ec.util.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The evolution state of the asynchronous steady-state GPHH.
+ * The initial population is evaluated by the evaluator as usual. Then, a breeder thread
+ * continuously breeds offspring from the population into a bounded queue (async.queue-capacity),
+ * and evalthreads evaluator threads take the offspring from the queue and evaluate them by the problem.
+ * Once evaluated, an offspring replaces an individual selected by the deselector (async.deselector),
+ * if it is better or with the replacement probability (async.replacement-probability).
+ * So the breeding and the evaluations overlap, and no thread waits for the slowest evaluation of a generation.
+ *
+ * A generation is the number of evaluations equal to the population size,
+ * after which the statistics are reported. The evaluation model is rotated every
+ * async.rotation-interval evaluations (the population size by default) if rotate-eval-model is true.
+ * At a rotation, the evaluator threads finish their current evaluations and wait, the seeds are rotated,
+ * and the population is re-evaluated by the evaluator with the new seeds, so the individuals stay comparable.
+ *
+ * The order of the evaluations depends on the threads, so the runs are not reproducible.
+ * The exchanger and checkpointing are not supported.
+ */
+
+public class AsyncSteadyStateGPHHEvolutionState extends GPHHEvolutionState {
+
+    public static final String P_ASYNC = "async";
+    public static final String P_QUEUE_CAPACITY = "queue-capacity";
+    public static final String P_ROTATION_INTERVAL = "rotation-interval";
+    public static final String P_REPLACEMENT_PROBABILITY = "replacement-probability";
+    public static final String P_DESELECTOR = "deselector";
+
+    protected int queueCapacity;
+    protected long rotationInterval;
+    protected double replacementProbability;
+    protected SelectionMethod deselector;
+
+    protected int generationSize;
+    protected long evaluations; // the number of offspring evaluated and inserted
+    protected long lastRotation; // the number of evaluations at the last rotation
+
+    // the population, the counters and the pause are guarded by the lock
+    protected final Object populationLock = new Object();
+    private boolean paused;
+    private int numInFlight; // the number of offspring being evaluated
+
+    private BlockingQueue<QueueIndividual> offspringQueue;
+    private List<Thread> workers;
+
+    @Override
+    public void setup(EvolutionState state, Parameter base) {
+        super.setup(state, base);
+
+        Parameter b = new Parameter(P_ASYNC);
+        queueCapacity = parameters.getIntWithDefault(b.push(P_QUEUE_CAPACITY), null, 2 * evalthreads);
+        rotationInterval = parameters.getLongWithDefault(b.push(P_ROTATION_INTERVAL), null, 0);
+        replacementProbability = parameters.getDoubleWithDefault(
+                b.push(P_REPLACEMENT_PROBABILITY), null, 0.0);
+
+        if (queueCapacity < 1) {
+            System.err.println("ERROR:");
+            System.err.println("The capacity of the offspring queue must be positive.");
+            System.exit(1);
+        }
+
+        if (replacementProbability < 0 || replacementProbability > 1) {
+            System.err.println("ERROR:");
+            System.err.println("The replacement probability must be within [0, 1].");
+            System.exit(1);
+        }
+
+        if (checkpoint) {
+            System.err.println("ERROR:");
+            System.err.println("The asynchronous steady-state GPHH does not support checkpointing.");
+            System.exit(1);
+        }
+
+        Parameter p = b.push(P_DESELECTOR);
+        deselector = (SelectionMethod)(parameters.getInstanceForParameter(p, null, SelectionMethod.class));
+        deselector.setup(this, p);
+    }
+
+    @Override
+    public int evolve() {
+        long numEvaluations = 0; // the snapshot of the evaluations taken under the lock
+
+        if (generation == 0) {
+            start = System.nanoTime();
+
+            // evaluate the initial population as usual
+            statistics.preEvaluationStatistics(this);
+            evaluator.evaluatePopulation(this);
+            statistics.postEvaluationStatistics(this);
+
+            generationSize = 0;
+            for (Subpopulation subpop : population.subpops)
+                generationSize += subpop.individuals.length;
+
+            if (rotationInterval <= 0)
+                rotationInterval = generationSize;
+
+            evaluations = 0;
+            lastRotation = 0;
+        }
+        else {
+            // wait for a generation of evaluations, rotating the evaluation model on the way
+            long target = (long)generation * generationSize;
+            while (true) {
+                long nextRotation = rotateEvalModel ? lastRotation + rotationInterval : Long.MAX_VALUE;
+                numEvaluations = waitForEvaluations(Math.min(target, nextRotation));
+
+                if (numEvaluations >= nextRotation)
+                    rotate();
+
+                if (numEvaluations >= target)
+                    break;
+            }
+
+            synchronized (populationLock) {
+                statistics.postEvaluationStatistics(this);
+            }
+        }
+
+        // the main thread mostly waits, so the wall clock time is used instead of its cpu time
+        finish = System.nanoTime();
+        duration = 1.0 * (finish - start) / 1000000000;
+
+        output.message("Generation " + generation + " elapsed " + duration + " seconds, " +
+                numEvaluations + " evaluations.");
+
+        if (evaluatedProblem() instanceof ReactiveGPHHProblem)
+            ((ReactiveGPHHProblem)evaluatedProblem()).getEvaluationModel().reportStatistics(this);
+
+        synchronized (populationLock) {
+            writeToStatFile();
+        }
+
+        start = System.nanoTime();
+
+        if (generation == numGenerations-1) {
+            stopWorkers();
+            return R_FAILURE;
+        }
+
+        if (generation == 0)
+            startWorkers();
+
+        generation++;
+
+        return R_NOTDONE;
+    }
+
+    /**
+     * Wait until the number of evaluations reaches the target.
+     * @param target the target number of evaluations.
+     * @return the number of evaluations when the wait is over, read under the lock.
+     */
+    private long waitForEvaluations(long target) {
+        synchronized (populationLock) {
+            while (evaluations < target) {
+                try {
+                    populationLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            return evaluations;
+        }
+    }
+
+    /**
+     * Rotate the evaluation model. The evaluator threads are paused until the evaluations in flight
+     * are finished, and the population is re-evaluated with the new seeds.
+     */
+    private void rotate() {
+        synchronized (populationLock) {
+            paused = true;
+            while (numInFlight > 0) {
+                try {
+                    populationLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            ((ReactiveGPHHProblem)evaluatedProblem()).rotateEvaluationModel();
+
+            // the breeder is blocked by the lock while the population is re-evaluated
+            for (Subpopulation subpop : population.subpops) {
+                for (Individual indi : subpop.individuals)
+                    indi.evaluated = false;
+            }
+            evaluator.evaluatePopulation(this);
+
+            lastRotation = evaluations;
+            paused = false;
+            populationLock.notifyAll();
+        }
+    }
+
+    /**
+     * Start the breeder thread and the evaluator threads.
+     */
+    private void startWorkers() {
+        offspringQueue = new ArrayBlockingQueue<>(queueCapacity);
+        workers = new ArrayList<>();
+
+        for (int s = 0; s < population.subpops.length; s++)
+            deselector.prepareToProduce(this, s, 0);
+
+        // the breeder uses the random number generator of thread 0, and the lock
+        workers.add(new Thread(this::breed, "Async breeder"));
+
+        for (int t = 0; t < evalthreads; t++) {
+            final int thread = t;
+            final SimpleProblemForm problem = (SimpleProblemForm)evaluator.p_problem.clone();
+            workers.add(new Thread(() -> evaluate(problem, thread), "Async evaluator " + t));
+        }
+
+        for (Thread worker : workers) {
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stop the breeder thread and the evaluator threads.
+     * The offspring still being evaluated are discarded.
+     */
+    private void stopWorkers() {
+        if (workers == null)
+            return;
+
+        for (Thread worker : workers)
+            worker.interrupt();
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (int s = 0; s < population.subpops.length; s++)
+            deselector.finishProducing(this, s, 0);
+
+        workers = null;
+    }
+
+    /**
+     * Breed the offspring into the queue until interrupted.
+     * The subpopulations take turns.
+     */
+    private void breed() {
+        BreedingPipeline[] pipelines = new BreedingPipeline[population.subpops.length];
+
+        synchronized (populationLock) {
+            for (int s = 0; s < pipelines.length; s++) {
+                pipelines[s] = (BreedingPipeline)population.subpops[s].species.pipe_prototype.clone();
+                pipelines[s].prepareToProduce(this, s, 0);
+            }
+        }
+
+        Individual[] offspring = new Individual[1];
+        int subpop = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                synchronized (populationLock) {
+                    pipelines[subpop].produce(1, 1, 0, subpop, offspring, this, 0);
+                }
+
+                offspringQueue.put(new QueueIndividual(offspring[0], subpop));
+                subpop = (subpop + 1) % pipelines.length;
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            synchronized (populationLock) {
+                for (int s = 0; s < pipelines.length; s++)
+                    pipelines[s].finishProducing(this, s, 0);
+            }
+        }
+    }
+
+    /**
+     * Evaluate the offspring from the queue and insert them into the population until interrupted.
+     * @param problem the problem of the thread.
+     * @param thread the thread number.
+     */
+    private void evaluate(SimpleProblemForm problem, int thread) {
+        try {
+            while (true) {
+                QueueIndividual qi = offspringQueue.take();
+
+                synchronized (populationLock) {
+                    while (paused)
+                        populationLock.wait();
+
+                    numInFlight ++;
+                }
+
+                try {
+                    problem.evaluate(this, qi.ind, qi.subpop, thread);
+                } finally {
+                    insert(qi);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Insert an evaluated offspring into its subpopulation. It replaces the individual selected
+     * by the deselector if it is better or with the replacement probability.
+     * @param qi the evaluated offspring and its subpopulation.
+     */
+    private void insert(QueueIndividual qi) {
+        synchronized (populationLock) {
+            numInFlight --;
+
+            // an offspring interrupted during the evaluation is not inserted
+            if (qi.ind.evaluated) {
+                Individual[] individuals = population.subpops[qi.subpop].individuals;
+                int dead = deselector.produce(qi.subpop, this, 0);
+
+                if (qi.ind.fitness.betterThan(individuals[dead].fitness) ||
+                        random[0].nextDouble() < replacementProbability)
+                    individuals[dead] = qi.ind;
+
+                evaluations ++;
+            }
+
+            populationLock.notifyAll();
+        }
+    }
+}
@@ -39,6 +39,18 @@ public class CalcPriorityProblem extends Problem implements SimpleProblemForm {
         return state;
     }
 
+    public void setCandidate(Arc candidate) {
+        this.candidate = candidate;
+    }
+
+    public void setRoute(NodeSeqRoute route) {
+        this.route = route;
+    }
+
+    public void setState(DecisionProcessState state) {
+        this.state = state;
+    }
+
     @Override
     public void evaluate(EvolutionState state, Individual ind,
                          int subpopulation, int threadnum) {
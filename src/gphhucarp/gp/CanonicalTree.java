@@ -0,0 +1,67 @@
+package gphhucarp.gp;
+
+import ec.gp.GPNode;
+import gphhucarp.gp.terminal.FeatureGPNode;
+import gputils.function.Add;
+import gputils.function.Mul;
+import gputils.terminal.ConstantTerminal;
+import gputils.terminal.DoubleERC;
+import gputils.terminal.TerminalERC;
+
+import java.util.Arrays;
+
+/**
+ * The canonical form of GP trees, used to identify the trees with the same value for every input.
+ * The features are identified by their classes, the constants by their bits,
+ * and the functions by their classes and the canonical forms of their children.
+ *
+ * The children of the commutative functions Add and Mul are sorted by their canonical forms,
+ * so that e.g. (a + b) and (b + a) have the same canonical form.
+ * Max and Min are not normalised, since max(a, b) and max(b, a) differ when a or b is NaN,
+ * or when comparing 0 with -0 (see the Max and Min nodes).
+ */
+
+public class CanonicalTree {
+
+    /**
+     * Get the canonical form of a tree.
+     * @param node the root node of the tree.
+     * @return the canonical form, or null if the tree has a terminal other than
+     * the features and constants.
+     */
+    public static String canonicalForm(GPNode node) {
+        GPNode terminal = node;
+        if (node instanceof TerminalERC)
+            terminal = ((TerminalERC)node).getTerminal();
+
+        if (terminal instanceof FeatureGPNode)
+            return terminal.getClass().getSimpleName();
+
+        if (terminal instanceof ConstantTerminal)
+            return Long.toHexString(Double.doubleToRawLongBits(((ConstantTerminal)terminal).getValue()));
+
+        if (terminal instanceof DoubleERC)
+            return Long.toHexString(Double.doubleToRawLongBits(((DoubleERC)terminal).value));
+
+        if (node.children.length == 0)
+            return null;
+
+        String[] children = new String[node.children.length];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = canonicalForm(node.children[i]);
+            if (children[i] == null)
+                return null;
+        }
+
+        if (node.getClass() == Add.class || node.getClass() == Mul.class)
+            Arrays.sort(children);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(node.getClass().getSimpleName());
+        for (String child : children)
+            sb.append(' ').append(child);
+        sb.append(')');
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,326 @@
+package gphhucarp.gp;
+
+import ec.EvolutionState;
+import ec.Individual;
+import ec.gp.GPIndividual;
+import ec.gp.GPNode;
+import ec.simple.SimpleEvaluator;
+import ec.simple.SimpleProblemForm;
+import ec.util.Parameter;
+import gphhucarp.decisionprocess.routingpolicy.GPRoutingPolicy;
+import gphhucarp.gp.evaluation.EvaluationModel;
+import gphhucarp.gp.evaluation.ReactiveEvaluationModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The cost-aware evaluator evaluates the population by a pool of threads (the number of processors by default),
+ * instead of the fixed chunks of the evaluation threads of ECJ. The simulation time varies a lot
+ * between the individuals, so the evaluation is split into tasks, which are sorted by their expected
+ * time, the longest first. Each thread repeatedly takes the next task once it finishes its current task,
+ * so the long tasks start early and the short tasks fill the gaps at the end of the generation.
+ *
+ * The expected time of an individual is its time in the previous generation if an individual
+ * of the same canonical form was evaluated then (e.g. an elite or a reproduced individual).
+ * Otherwise, it is its tree size times the average time per node in the previous generation.
+ *
+ * By default, a task evaluates an individual by the problem. Optionally (sample-block-size > 0),
+ * a task simulates a block of the samples of an individual, and the fitness is set once all its blocks
+ * are done.
+ *
+ * Optionally (sample-major = true), the evaluation is sample-major: a task simulates a block of
+ * individuals (individual-block-size, by default the population divided by the threads) on a sample,
+ * and the tasks are ordered by the samples first. A thread simulates the same sample over and over,
+ * so the sampled instance (the actual demands, costs and distances) is sampled once and stays in the cache,
+ * instead of being sampled again for each individual.
+ *
+ * The sample blocks and the sample-major evaluation require a reactive evaluation model
+ * without early termination and fitness cache.
+ *
+ * The utilisation of each thread, i.e. its busy time over the wall time, is reported every generation.
+ */
+
+public class CostAwareEvaluator extends SimpleEvaluator {
+
+    public static final String P_THREADS = "threads";
+    public static final String P_SAMPLE_BLOCK_SIZE = "sample-block-size";
+    public static final String P_SAMPLE_MAJOR = "sample-major";
+    public static final String P_INDIVIDUAL_BLOCK_SIZE = "individual-block-size";
+
+    protected int numThreads;
+    protected int sampleBlockSize;
+    protected boolean sampleMajor;
+    protected int individualBlockSize;
+    private ForkJoinPool pool;
+
+    // the times of the individuals in the previous generation, keyed by their canonical forms
+    private Map<String, Long> previousTimes = new HashMap<>();
+    private double previousTimePerNode = 1;
+
+    /**
+     * The evaluation of an individual, done by one or more tasks.
+     */
+    private class IndividualEvaluation {
+        private final Individual indi;
+        private final int subpop;
+        private final String canonicalForm;
+        private final int size;
+        private final double expectedTime;
+
+        private GPRoutingPolicy policy; // shared by the tasks simulating the samples
+        private double[][] objValues; // of each sample
+        private int remainingTasks;
+        private long time;
+
+        private IndividualEvaluation(Individual indi, int subpop) {
+            this.indi = indi;
+            this.subpop = subpop;
+
+            GPNode root = ((GPIndividual)indi).trees[0].child;
+            canonicalForm = CanonicalTree.canonicalForm(TreeSimplifier.simplify(root));
+            size = root.numNodes(GPNode.NODESEARCH_ALL);
+
+            Long previousTime = canonicalForm == null ? null : previousTimes.get(canonicalForm);
+            expectedTime = previousTime == null ? size * previousTimePerNode : previousTime;
+        }
+
+        /**
+         * Record the time of a task. Return true if all the tasks of the evaluation are done.
+         */
+        private synchronized boolean finishTask(long taskTime) {
+            time += taskTime;
+            remainingTasks --;
+
+            return remainingTasks <= 0;
+        }
+    }
+
+    /**
+     * A task: a number of individuals, each on the samples [from, to).
+     */
+    private static class Task {
+        private final List<IndividualEvaluation> evaluations;
+        private final int from;
+        private final int to;
+        private final double expectedTime;
+
+        private Task(List<IndividualEvaluation> evaluations, int from, int to, double expectedTime) {
+            this.evaluations = evaluations;
+            this.from = from;
+            this.to = to;
+            this.expectedTime = expectedTime;
+        }
+    }
+
+    @Override
+    public void setup(final EvolutionState state, final Parameter base) {
+        super.setup(state, base);
+
+        numThreads = state.parameters.getIntWithDefault(base.push(P_THREADS), null,
+                Runtime.getRuntime().availableProcessors());
+        sampleBlockSize = state.parameters.getIntWithDefault(base.push(P_SAMPLE_BLOCK_SIZE), null, 0);
+        sampleMajor = state.parameters.getBoolean(base.push(P_SAMPLE_MAJOR), null, false);
+        individualBlockSize = state.parameters.getIntWithDefault(base.push(P_INDIVIDUAL_BLOCK_SIZE), null, 0);
+
+        if (numThreads < 1) {
+            System.err.println("ERROR:");
+            System.err.println("The number of threads must be positive.");
+            System.exit(1);
+        }
+
+        EvaluationModel evaluationModel = ((ReactiveGPHHProblem)p_problem).getEvaluationModel();
+        if ((sampleBlockSize > 0 || sampleMajor) && (evaluationModel.getClass() != ReactiveEvaluationModel.class ||
+                evaluationModel.isEarlyTermination() || evaluationModel.isFitnessCache())) {
+            System.err.println("ERROR:");
+            System.err.println("The sample blocks and the sample-major evaluation require a reactive evaluation model " +
+                    "without early termination and fitness cache.");
+            System.exit(1);
+        }
+
+        pool = new ForkJoinPool(numThreads);
+    }
+
+    @Override
+    public void evaluatePopulation(final EvolutionState state) {
+        ReactiveGPHHProblem problem = (ReactiveGPHHProblem)p_problem;
+        int numSamples = problem.getEvaluationModel().numSamples();
+        boolean simulated = sampleBlockSize > 0 || sampleMajor;
+
+        List<IndividualEvaluation> evaluations = new ArrayList<>();
+        for (int s = 0; s < state.population.subpops.length; s++) {
+            for (Individual indi : state.population.subpops[s].individuals) {
+                IndividualEvaluation evaluation = new IndividualEvaluation(indi, s);
+
+                if (simulated) {
+                    evaluation.policy = new GPRoutingPolicy(problem.getPoolFilter(), ((GPIndividual)indi).trees[0],
+                            problem.getPriorityFunctionCompiler());
+                    evaluation.policy.prepare();
+                    evaluation.objValues = new double[numSamples][];
+                }
+
+                evaluations.add(evaluation);
+            }
+        }
+
+        List<Task> tasks = sampleMajor ?
+                sampleMajorTasks(evaluations, numSamples) : individualMajorTasks(evaluations, numSamples);
+
+        // each thread takes the next task until all the tasks are taken
+        AtomicInteger nextTask = new AtomicInteger(0);
+        List<Callable<Long>> workers = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int threadnum = t;
+            workers.add(() -> work(state, threadnum, tasks, nextTask));
+        }
+
+        long start = System.nanoTime();
+        long[] busyTimes = new long[numThreads];
+        try {
+            List<Future<Long>> results = pool.invokeAll(workers);
+            for (int t = 0; t < numThreads; t++)
+                busyTimes[t] = results.get(t).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        long wallTime = System.nanoTime() - start;
+
+        // the times of this generation for the next generation
+        previousTimes = new HashMap<>();
+        long totalTime = 0;
+        long totalSize = 0;
+        for (IndividualEvaluation evaluation : evaluations) {
+            if (evaluation.canonicalForm != null)
+                previousTimes.put(evaluation.canonicalForm, evaluation.time);
+
+            totalTime += evaluation.time;
+            totalSize += evaluation.size;
+        }
+        if (totalSize > 0)
+            previousTimePerNode = (double)totalTime / totalSize;
+
+        reportUtilisation(state, wallTime, busyTimes);
+    }
+
+    /**
+     * The individual-major tasks: each task is an individual, or a block of its samples.
+     * The tasks are sorted from the longest expected time.
+     */
+    private List<Task> individualMajorTasks(List<IndividualEvaluation> evaluations, int numSamples) {
+        int blockSize = (sampleBlockSize > 0) ? sampleBlockSize : numSamples;
+
+        List<Task> tasks = new ArrayList<>();
+        for (IndividualEvaluation evaluation : evaluations) {
+            for (int from = 0; from < numSamples; from += blockSize) {
+                int to = Math.min(from + blockSize, numSamples);
+                evaluation.remainingTasks ++;
+                tasks.add(new Task(Collections.singletonList(evaluation), from, to,
+                        evaluation.expectedTime * (to - from) / numSamples));
+            }
+        }
+
+        tasks.sort((o1, o2) -> Double.compare(o2.expectedTime, o1.expectedTime));
+
+        return tasks;
+    }
+
+    /**
+     * The sample-major tasks: each task is a block of individuals on a sample.
+     * The individuals are sorted from the longest expected time before being split into blocks,
+     * and the tasks are ordered by the samples first.
+     */
+    private List<Task> sampleMajorTasks(List<IndividualEvaluation> evaluations, int numSamples) {
+        List<IndividualEvaluation> sorted = new ArrayList<>(evaluations);
+        sorted.sort((o1, o2) -> Double.compare(o2.expectedTime, o1.expectedTime));
+
+        int blockSize = individualBlockSize;
+        if (blockSize <= 0)
+            blockSize = (sorted.size() + numThreads - 1) / numThreads;
+
+        List<Task> tasks = new ArrayList<>();
+        for (int k = 0; k < numSamples; k++) {
+            for (int from = 0; from < sorted.size(); from += blockSize) {
+                List<IndividualEvaluation> block = sorted.subList(from, Math.min(from + blockSize, sorted.size()));
+
+                double expectedTime = 0;
+                for (IndividualEvaluation evaluation : block) {
+                    evaluation.remainingTasks ++;
+                    expectedTime += evaluation.expectedTime / numSamples;
+                }
+
+                tasks.add(new Task(block, k, k+1, expectedTime));
+            }
+        }
+
+        return tasks;
+    }
+
+    /**
+     * The work of a thread: take and run the next task until all the tasks are taken.
+     * @return the busy time of the thread in nanoseconds.
+     */
+    private long work(final EvolutionState state, int threadnum,
+                      List<Task> tasks, AtomicInteger nextTask) {
+        SimpleProblemForm problem = (SimpleProblemForm)(p_problem.clone());
+        ((ec.Problem)problem).prepareToEvaluate(state, threadnum);
+        EvaluationModel evaluationModel = ((ReactiveGPHHProblem)problem).getEvaluationModel();
+
+        long busyTime = 0;
+        int i;
+        while ((i = nextTask.getAndIncrement()) < tasks.size()) {
+            Task task = tasks.get(i);
+
+            for (IndividualEvaluation evaluation : task.evaluations) {
+                long start = System.nanoTime();
+
+                if (evaluation.policy == null) {
+                    problem.evaluate(state, evaluation.indi, evaluation.subpop, threadnum);
+                }
+                else {
+                    for (int k = task.from; k < task.to; k++)
+                        evaluation.objValues[k] = evaluationModel.simulateSample(evaluation.policy, k, true);
+                }
+
+                long time = System.nanoTime() - start;
+                busyTime += time;
+
+                if (evaluation.finishTask(time) && evaluation.policy != null) {
+                    // the last task sets the fitness from the objective values of all the samples
+                    ((ReactiveEvaluationModel)evaluationModel).setFitness(
+                            evaluation.objValues, evaluation.indi.fitness, state);
+                    evaluation.indi.evaluated = true;
+                }
+            }
+        }
+
+        ((ec.Problem)problem).finishEvaluating(state, threadnum);
+
+        return busyTime;
+    }
+
+    private void reportUtilisation(final EvolutionState state, long wallTime, long[] busyTimes) {
+        StringBuilder utilisations = new StringBuilder();
+        long totalBusyTime = 0;
+        for (int t = 0; t < busyTimes.length; t++) {
+            totalBusyTime += busyTimes[t];
+
+            if (t > 0)
+                utilisations.append(", ");
+            utilisations.append(String.format("%.1f%%", 100.0 * busyTimes[t] / wallTime));
+        }
+
+        state.output.message(String.format("Evaluation: %.3f seconds on %d threads, " +
+                        "%.3f seconds busy in total (%.1f%%). Thread utilisation: %s.",
+                wallTime / 1e9, busyTimes.length, totalBusyTime / 1e9,
+                100.0 * totalBusyTime / (wallTime * (double)busyTimes.length), utilisations));
+    }
+}
@@ -0,0 +1,675 @@
+package gphhucarp.gp;
+
+import ec.gp.GPNode;
+import gphhucarp.core.Arc;
+import gphhucarp.gp.terminal.FeatureGPNode;
+import gphhucarp.gp.terminal.FeatureLevel;
+import gputils.DoubleData;
+import gputils.function.Add;
+import gputils.function.Div;
+import gputils.function.If;
+import gputils.function.Max;
+import gputils.function.Min;
+import gputils.function.Mul;
+import gputils.function.Sub;
+import gputils.terminal.ConstantTerminal;
+import gputils.terminal.DoubleERC;
+import gputils.terminal.TerminalERC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A GP tree flattened into a postfix program, which is interpreted by a small stack machine.
+ * The tree is flattened once, and then evaluated many times without the virtual eval calls
+ * and the indirection of the terminal ERCs.
+ *
+ * The program is an array of opcodes, some of which are followed by an operand:
+ *  - CONST i: push the i-th constant (constant terminals and double ERCs).
+ *  - FEATURE i: push the value of the i-th feature.
+ *  - NODE i: push the value of the i-th node evaluated as a tree, for the unknown nodes.
+ *  - HOISTED i: push the value of the i-th hoisted subtree in the current decision.
+ *  - ADD, SUB, MUL, DIV, MAX, MIN: pop two values and push the result.
+ *  - JUMP_IF_NOT_POSITIVE a: pop a value, jump to a if it is not positive.
+ *  - JUMP a: jump to a.
+ * The If node is compiled into the jumps, so that only one of its branches is evaluated.
+ * Each operation does exactly what its GP node does, so the result is identical
+ * to the tree evaluation (e.g. Div is not protected).
+ *
+ * A batch of candidates can be evaluated together by the batch program, whose operands are
+ * columns with a value for each candidate. Each feature fills its column once, and each operation
+ * is a tight loop over the columns. The batch program has no jump: If evaluates both branches
+ * and SELECT picks the branch of each candidate (the features have no side effect on the result).
+ * The batches smaller than the minimal batch size are evaluated one by one, since the
+ * columns do not pay off for small pools.
+ *
+ * The candidates of a number of decisions with different routes and states (e.g. the decisions of
+ * the same policy on different samples) can also be packed into the columns together,
+ * so that the operations loop over the candidates of all the decisions.
+ *
+ * The subtrees that do not depend on the candidate, i.e. with only the constants and the state
+ * and route level features, are hoisted out of the program. Each of them is flattened separately,
+ * and evaluated once per decision (for a batch of candidates), then used as a constant.
+ *
+ * The stacks and the priority calculation problem are reused by each thread.
+ */
+
+public class FlattenedTree implements PriorityFunction {
+
+    public static final int CONST = 0;
+    public static final int FEATURE = 1;
+    public static final int NODE = 2;
+    public static final int ADD = 3;
+    public static final int SUB = 4;
+    public static final int MUL = 5;
+    public static final int DIV = 6;
+    public static final int MAX = 7;
+    public static final int MIN = 8;
+    public static final int JUMP_IF_NOT_POSITIVE = 9;
+    public static final int JUMP = 10;
+    public static final int SELECT = 11;
+    public static final int HOISTED = 12;
+
+    public static final int DEFAULT_MIN_BATCH_SIZE = 64;
+
+    private static final ThreadLocal<double[]> stacks =
+            ThreadLocal.withInitial(() -> new double[16]);
+    private static final ThreadLocal<double[][]> columnStacks =
+            ThreadLocal.withInitial(() -> new double[16][0]);
+    private static final ThreadLocal<double[]> hoistedValueBuffers =
+            ThreadLocal.withInitial(() -> new double[16]);
+    private static final ThreadLocal<double[][]> packedHoistedValueBuffers =
+            ThreadLocal.withInitial(() -> new double[0][]);
+    private static final ThreadLocal<CalcPriorityProblem> problems =
+            ThreadLocal.withInitial(() -> new CalcPriorityProblem(null, null, null));
+    private static final ThreadLocal<CalcPriorityProblem[]> packedProblems =
+            ThreadLocal.withInitial(() -> new CalcPriorityProblem[0]);
+
+    private int[] code;
+    private double[] constants;
+    private FeatureGPNode[] features;
+    private GPNode[] nodes;
+    private int maxStackSize;
+    private int[] batchCode;
+    private int maxBatchStackSize;
+    private FlattenedTree[] hoisted; // the hoisted subtrees
+    private int minBatchSize = DEFAULT_MIN_BATCH_SIZE; // the minimal number of candidates to run the batch program
+
+    private FlattenedTree() {
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public int getMaxStackSize() {
+        return maxStackSize;
+    }
+
+    public FlattenedTree[] getHoisted() {
+        return hoisted;
+    }
+
+    /**
+     * Flatten a GP tree, given its root node.
+     * @param root the root node.
+     * @return the flattened tree.
+     */
+    public static FlattenedTree flatten(GPNode root) {
+        return flatten(root, DEFAULT_MIN_BATCH_SIZE);
+    }
+
+    /**
+     * Flatten a GP tree, given its root node.
+     * @param root the root node.
+     * @param minBatchSize the minimal number of candidates to run the batch program.
+     * @return the flattened tree.
+     */
+    public static FlattenedTree flatten(GPNode root, int minBatchSize) {
+        FlattenedTree flattened = flatten(root, true);
+        flattened.minBatchSize = minBatchSize;
+
+        return flattened;
+    }
+
+    /**
+     * Flatten a GP tree, given its root node.
+     * @param root the root node.
+     * @param hoisting whether to hoist the candidate-invariant subtrees.
+     * @return the flattened tree.
+     */
+    private static FlattenedTree flatten(GPNode root, boolean hoisting) {
+        Compiler compiler = new Compiler(hoisting);
+        compiler.compile(root, 0, 0);
+
+        FlattenedTree flattened = new FlattenedTree();
+        flattened.code = new int[compiler.code.size()];
+        for (int i = 0; i < flattened.code.length; i++)
+            flattened.code[i] = compiler.code.get(i);
+
+        flattened.constants = new double[compiler.constants.size()];
+        for (int i = 0; i < flattened.constants.length; i++)
+            flattened.constants[i] = compiler.constants.get(i);
+
+        flattened.features = compiler.features.toArray(new FeatureGPNode[0]);
+        flattened.nodes = compiler.nodes.toArray(new GPNode[0]);
+        flattened.maxStackSize = compiler.maxStackSize;
+
+        flattened.batchCode = new int[compiler.batchCode.size()];
+        for (int i = 0; i < flattened.batchCode.length; i++)
+            flattened.batchCode[i] = compiler.batchCode.get(i);
+        flattened.maxBatchStackSize = compiler.maxBatchStackSize;
+        flattened.hoisted = compiler.hoisted.toArray(new FlattenedTree[0]);
+
+        return flattened;
+    }
+
+    /**
+     * The priority calculation problem of the current thread, to be set before evaluation.
+     * @return the priority calculation problem.
+     */
+    public static CalcPriorityProblem threadProblem() {
+        return problems.get();
+    }
+
+    /**
+     * The priority calculation problems of the current thread for a number of packed decisions.
+     * @param numDecisions the number of decisions.
+     * @return the priority calculation problems, at least one for each decision.
+     */
+    public static CalcPriorityProblem[] threadProblems(int numDecisions) {
+        CalcPriorityProblem[] threadProblems = packedProblems.get();
+        if (threadProblems.length < numDecisions) {
+            threadProblems = Arrays.copyOf(threadProblems, numDecisions);
+            for (int i = 0; i < numDecisions; i++) {
+                if (threadProblems[i] == null)
+                    threadProblems[i] = new CalcPriorityProblem(null, null, null);
+            }
+            packedProblems.set(threadProblems);
+        }
+
+        return threadProblems;
+    }
+
+    /**
+     * Evaluate the flattened tree.
+     * @param problem the priority calculation problem, i.e. the candidate, route and state.
+     * @return the value of the tree.
+     */
+    @Override
+    public double eval(CalcPriorityProblem problem) {
+        return run(problem, evalHoisted(problem));
+    }
+
+    /**
+     * Evaluate the hoisted subtrees for the current decision.
+     * @param problem the priority calculation problem with the route and state.
+     * @return the values of the hoisted subtrees.
+     */
+    private double[] evalHoisted(CalcPriorityProblem problem) {
+        if (hoisted.length == 0)
+            return null;
+
+        double[] hoistedValues = hoistedValueBuffers.get();
+        if (hoistedValues.length < hoisted.length) {
+            hoistedValues = new double[hoisted.length];
+            hoistedValueBuffers.set(hoistedValues);
+        }
+
+        for (int i = 0; i < hoisted.length; i++)
+            hoistedValues[i] = hoisted[i].run(problem, null);
+
+        return hoistedValues;
+    }
+
+    /**
+     * Run the program.
+     * @param problem the priority calculation problem, i.e. the candidate, route and state.
+     * @param hoistedValues the values of the hoisted subtrees.
+     * @return the value of the tree.
+     */
+    private double run(CalcPriorityProblem problem, double[] hoistedValues) {
+        double[] stack = stacks.get();
+        if (stack.length < maxStackSize) {
+            stack = new double[maxStackSize];
+            stacks.set(stack);
+        }
+
+        int top = -1;
+        int pc = 0;
+        double a, b;
+
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case CONST:
+                    stack[++top] = constants[code[pc+1]];
+                    pc += 2;
+                    break;
+                case FEATURE:
+                    stack[++top] = features[code[pc+1]].value(problem);
+                    pc += 2;
+                    break;
+                case NODE:
+                    DoubleData data = new DoubleData();
+                    nodes[code[pc+1]].eval(null, 0, data, null, null, problem);
+                    stack[++top] = data.value;
+                    pc += 2;
+                    break;
+                case HOISTED:
+                    stack[++top] = hoistedValues[code[pc+1]];
+                    pc += 2;
+                    break;
+                case ADD:
+                    b = stack[top--];
+                    stack[top] = stack[top] + b;
+                    pc ++;
+                    break;
+                case SUB:
+                    b = stack[top--];
+                    stack[top] = stack[top] - b;
+                    pc ++;
+                    break;
+                case MUL:
+                    b = stack[top--];
+                    stack[top] = stack[top] * b;
+                    pc ++;
+                    break;
+                case DIV:
+                    b = stack[top--];
+                    stack[top] = stack[top] / b;
+                    pc ++;
+                    break;
+                case MAX:
+                    b = stack[top--];
+                    a = stack[top];
+                    if (b < a)
+                        stack[top] = a;
+                    else
+                        stack[top] = b;
+                    pc ++;
+                    break;
+                case MIN:
+                    b = stack[top--];
+                    a = stack[top];
+                    if (b > a)
+                        stack[top] = a;
+                    else
+                        stack[top] = b;
+                    pc ++;
+                    break;
+                case JUMP_IF_NOT_POSITIVE:
+                    if (stack[top--] > 0)
+                        pc += 2;
+                    else
+                        pc = code[pc+1];
+                    break;
+                case JUMP:
+                    pc = code[pc+1];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + code[pc]);
+            }
+        }
+
+        return stack[top];
+    }
+
+    /**
+     * Evaluate the flattened tree for a batch of candidates.
+     * @param problem the priority calculation problem with the route and state.
+     * @param candidates the candidates.
+     * @param values the values of the tree for the candidates.
+     */
+    @Override
+    public void evalBatch(CalcPriorityProblem problem, List<Arc> candidates, double[] values) {
+        int n = candidates.size();
+
+        // the hoisted subtrees do not depend on the candidate
+        double[] hoistedValues = evalHoisted(problem);
+
+        if (n < minBatchSize) {
+            int i = 0;
+            for (Arc candidate : candidates) {
+                problem.setCandidate(candidate);
+                values[i++] = run(problem, hoistedValues);
+            }
+            return;
+        }
+
+        runColumns(new CalcPriorityProblem[]{problem}, Collections.singletonList(candidates),
+                new double[][]{hoistedValues}, n, values);
+    }
+
+    /**
+     * Evaluate the flattened tree for the candidates of a number of decisions packed together.
+     * Each decision has its own route and state, and its own values of the hoisted subtrees.
+     * @param problems the priority calculation problems with the route and state of each decision.
+     * @param candidates the candidates of each decision.
+     * @param values the values of the tree for the candidates, packed in the order of the decisions.
+     */
+    @Override
+    public void evalPacked(CalcPriorityProblem[] problems, List<List<Arc>> candidates, double[] values) {
+        int numDecisions = candidates.size();
+        int n = 0;
+        for (List<Arc> decisionCandidates : candidates)
+            n += decisionCandidates.size();
+
+        // the hoisted subtrees of each decision
+        double[][] hoistedValues = null;
+        if (hoisted.length > 0) {
+            hoistedValues = packedHoistedValueBuffers.get();
+            if (hoistedValues.length < numDecisions) {
+                hoistedValues = Arrays.copyOf(hoistedValues, numDecisions);
+                packedHoistedValueBuffers.set(hoistedValues);
+            }
+
+            for (int d = 0; d < numDecisions; d++) {
+                if (hoistedValues[d] == null || hoistedValues[d].length < hoisted.length)
+                    hoistedValues[d] = new double[hoisted.length];
+
+                for (int i = 0; i < hoisted.length; i++)
+                    hoistedValues[d][i] = hoisted[i].run(problems[d], null);
+            }
+        }
+
+        if (n < minBatchSize) {
+            int i = 0;
+            for (int d = 0; d < numDecisions; d++) {
+                CalcPriorityProblem problem = problems[d];
+                for (Arc candidate : candidates.get(d)) {
+                    problem.setCandidate(candidate);
+                    values[i++] = run(problem, hoistedValues == null ? null : hoistedValues[d]);
+                }
+            }
+            return;
+        }
+
+        runColumns(problems, candidates, hoistedValues, n, values);
+    }
+
+    /**
+     * Run the batch program over the columns of the candidates of a number of decisions.
+     * @param problems the priority calculation problems with the route and state of each decision.
+     * @param candidates the candidates of each decision.
+     * @param hoistedValues the values of the hoisted subtrees of each decision.
+     * @param n the total number of candidates.
+     * @param values the values of the tree for the candidates, packed in the order of the decisions.
+     */
+    private void runColumns(CalcPriorityProblem[] problems, List<List<Arc>> candidates,
+                            double[][] hoistedValues, int n, double[] values) {
+        int numDecisions = candidates.size();
+
+        double[][] stack = columnStacks.get();
+        if (stack.length < maxBatchStackSize || stack[0].length < n) {
+            stack = new double[Math.max(stack.length, maxBatchStackSize)][Math.max(stack[0].length, n)];
+            columnStacks.set(stack);
+        }
+
+        int top = -1;
+        int pc = 0;
+        double[] a, b, c;
+
+        while (pc < batchCode.length) {
+            switch (batchCode[pc]) {
+                case CONST:
+                    Arrays.fill(stack[++top], 0, n, constants[batchCode[pc+1]]);
+                    pc += 2;
+                    break;
+                case HOISTED:
+                    a = stack[++top];
+                    int from = 0;
+                    for (int d = 0; d < numDecisions; d++) {
+                        int to = from + candidates.get(d).size();
+                        Arrays.fill(a, from, to, hoistedValues[d][batchCode[pc+1]]);
+                        from = to;
+                    }
+                    pc += 2;
+                    break;
+                case FEATURE:
+                    FeatureGPNode feature = features[batchCode[pc+1]];
+                    a = stack[++top];
+                    int i = 0;
+                    for (int d = 0; d < numDecisions; d++) {
+                        CalcPriorityProblem problem = problems[d];
+                        for (Arc candidate : candidates.get(d)) {
+                            problem.setCandidate(candidate);
+                            a[i++] = feature.value(problem);
+                        }
+                    }
+                    pc += 2;
+                    break;
+                case NODE:
+                    GPNode node = nodes[batchCode[pc+1]];
+                    DoubleData data = new DoubleData();
+                    a = stack[++top];
+                    int j = 0;
+                    for (int d = 0; d < numDecisions; d++) {
+                        CalcPriorityProblem problem = problems[d];
+                        for (Arc candidate : candidates.get(d)) {
+                            problem.setCandidate(candidate);
+                            node.eval(null, 0, data, null, null, problem);
+                            a[j++] = data.value;
+                        }
+                    }
+                    pc += 2;
+                    break;
+                case ADD:
+                    b = stack[top--];
+                    a = stack[top];
+                    for (int k = 0; k < n; k++)
+                        a[k] = a[k] + b[k];
+                    pc ++;
+                    break;
+                case SUB:
+                    b = stack[top--];
+                    a = stack[top];
+                    for (int k = 0; k < n; k++)
+                        a[k] = a[k] - b[k];
+                    pc ++;
+                    break;
+                case MUL:
+                    b = stack[top--];
+                    a = stack[top];
+                    for (int k = 0; k < n; k++)
+                        a[k] = a[k] * b[k];
+                    pc ++;
+                    break;
+                case DIV:
+                    b = stack[top--];
+                    a = stack[top];
+                    for (int k = 0; k < n; k++)
+                        a[k] = a[k] / b[k];
+                    pc ++;
+                    break;
+                case MAX:
+                    b = stack[top--];
+                    a = stack[top];
+                    for (int k = 0; k < n; k++) {
+                        if (!(b[k] < a[k]))
+                            a[k] = b[k];
+                    }
+                    pc ++;
+                    break;
+                case MIN:
+                    b = stack[top--];
+                    a = stack[top];
+                    for (int k = 0; k < n; k++) {
+                        if (!(b[k] > a[k]))
+                            a[k] = b[k];
+                    }
+                    pc ++;
+                    break;
+                case SELECT:
+                    c = stack[top--]; // else
+                    b = stack[top--]; // then
+                    a = stack[top]; // condition
+                    for (int k = 0; k < n; k++) {
+                        if (a[k] > 0)
+                            a[k] = b[k];
+                        else
+                            a[k] = c[k];
+                    }
+                    pc ++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown batch opcode: " + batchCode[pc]);
+            }
+        }
+
+        System.arraycopy(stack[top], 0, values, 0, n);
+    }
+
+    /**
+     * The compiler that flattens a tree in postfix order.
+     * It compiles both the program and the batch program.
+     */
+    private static class Compiler {
+        List<Integer> code = new ArrayList<>();
+        List<Integer> batchCode = new ArrayList<>();
+        List<Double> constants = new ArrayList<>();
+        List<FeatureGPNode> features = new ArrayList<>();
+        List<GPNode> nodes = new ArrayList<>();
+        List<FlattenedTree> hoisted = new ArrayList<>();
+        boolean hoisting;
+        int maxStackSize = 0;
+        int maxBatchStackSize = 0;
+
+        Compiler(boolean hoisting) {
+            this.hoisting = hoisting;
+        }
+
+        /**
+         * Compile a node.
+         * @param node the node.
+         * @param stackSize the stack size before the node is evaluated.
+         * @param batchStackSize the stack size of the batch program before the node is evaluated.
+         */
+        void compile(GPNode node, int stackSize, int batchStackSize) {
+            GPNode terminal = node;
+            if (node instanceof TerminalERC)
+                terminal = ((TerminalERC)node).getTerminal();
+
+            boolean constant = terminal instanceof ConstantTerminal || node instanceof DoubleERC;
+
+            if (hoisting && !constant && candidateInvariant(node)) {
+                emit(HOISTED, hoisted.size(), stackSize, batchStackSize);
+                hoisted.add(flatten(node, false));
+            }
+            else if (terminal instanceof FeatureGPNode) {
+                emit(FEATURE, features.size(), stackSize, batchStackSize);
+                features.add((FeatureGPNode)terminal);
+            }
+            else if (terminal instanceof ConstantTerminal) {
+                emit(CONST, constants.size(), stackSize, batchStackSize);
+                constants.add(((ConstantTerminal)terminal).getValue());
+            }
+            else if (node instanceof DoubleERC) {
+                emit(CONST, constants.size(), stackSize, batchStackSize);
+                constants.add(((DoubleERC)node).value);
+            }
+            else if (node.getClass() == If.class) {
+                // the batch program keeps the condition and both branches for the selection
+                compile(node.children[0], stackSize, batchStackSize);
+                int jumpToElse = jump(JUMP_IF_NOT_POSITIVE);
+                compile(node.children[1], stackSize, batchStackSize + 1);
+                int jumpToEnd = jump(JUMP);
+                code.set(jumpToElse + 1, code.size());
+                compile(node.children[2], stackSize, batchStackSize + 2);
+                code.set(jumpToEnd + 1, code.size());
+                batchCode.add(SELECT);
+            }
+            else {
+                int opcode = binaryOpcode(node);
+
+                if (opcode < 0) {
+                    emit(NODE, nodes.size(), stackSize, batchStackSize);
+                    nodes.add(node);
+                }
+                else {
+                    compile(node.children[0], stackSize, batchStackSize);
+                    compile(node.children[1], stackSize + 1, batchStackSize + 1);
+                    code.add(opcode);
+                    batchCode.add(opcode);
+                }
+            }
+        }
+
+        /**
+         * Emit an instruction with an operand, which pushes a value, to both programs.
+         */
+        void emit(int opcode, int operand, int stackSize, int batchStackSize) {
+            if (maxStackSize < stackSize + 1)
+                maxStackSize = stackSize + 1;
+            if (maxBatchStackSize < batchStackSize + 1)
+                maxBatchStackSize = batchStackSize + 1;
+
+            code.add(opcode);
+            code.add(operand);
+            batchCode.add(opcode);
+            batchCode.add(operand);
+        }
+
+        /**
+         * Emit a jump with an address to be set to the program only.
+         * @return the position of the jump.
+         */
+        int jump(int opcode) {
+            code.add(opcode);
+            code.add(-1);
+
+            return code.size() - 2;
+        }
+
+        /**
+         * Whether a subtree does not depend on the candidate.
+         * @param node the root node of the subtree.
+         * @return true if it does not depend on the candidate, and false otherwise.
+         */
+        boolean candidateInvariant(GPNode node) {
+            GPNode terminal = node;
+            if (node instanceof TerminalERC)
+                terminal = ((TerminalERC)node).getTerminal();
+
+            if (terminal instanceof FeatureGPNode)
+                return ((FeatureGPNode)terminal).level() != FeatureLevel.CANDIDATE;
+
+            if (terminal instanceof ConstantTerminal || node instanceof DoubleERC)
+                return true;
+
+            if (node.getClass() != If.class && binaryOpcode(node) < 0)
+                return false;
+
+            for (GPNode child : node.children) {
+                if (!candidateInvariant(child))
+                    return false;
+            }
+
+            return true;
+        }
+
+        int binaryOpcode(GPNode node) {
+            Class<?> c = node.getClass();
+
+            if (c == Add.class)
+                return ADD;
+            if (c == Sub.class)
+                return SUB;
+            if (c == Mul.class)
+                return MUL;
+            if (c == Div.class)
+                return DIV;
+            if (c == Max.class)
+                return MAX;
+            if (c == Min.class)
+                return MIN;
+
+            return -1;
+        }
+    }
+}
@@ -4,6 +4,9 @@ import ec.EvolutionState;
 import ec.Individual;
 import ec.Initializer;
 import ec.Population;
+import ec.Problem;
+import ec.eval.MasterProblem;
+import ec.exchange.IslandExchange;
 import ec.gp.GPIndividual;
 import ec.gp.GPNode;
 import ec.util.Checkpoint;
@@ -68,7 +71,13 @@ public class GPHHEvolutionState extends TerminalERCEvolutionState {
 	protected double duration;
 
 	public void initStatFile() {
-		statFile = new File("job." + jobSeed + ".stat.csv");
+		String prefix = "job." + jobSeed;
+
+		// each island of an island model writes its own stat file
+		if (exchanger instanceof IslandExchange)
+			prefix += "." + ((IslandExchange)exchanger).ownId;
+
+		statFile = new File(prefix + ".stat.csv");
 		if (statFile.exists()) {
 			statFile.delete();
 		}
@@ -197,6 +206,60 @@ public class GPHHEvolutionState extends TerminalERCEvolutionState {
 		initTerminalSets();
 	}
 
+	/**
+	 * The problem to evaluate the individuals. In the master/slave evaluation,
+	 * it is the problem behind the master problem of the evaluator.
+	 * @return the problem.
+	 */
+	public Problem evaluatedProblem() {
+		if (evaluator.p_problem instanceof MasterProblem)
+			return ((MasterProblem)evaluator.p_problem).problem;
+
+		return evaluator.p_problem;
+	}
+
+	/**
+	 * The generation of the individuals being evaluated.
+	 * By default, it is the current generation.
+	 * @return the generation being evaluated.
+	 */
+	public int evaluatedGeneration() {
+		return generation;
+	}
+
+	/**
+	 * The current time in nanoseconds to measure the duration of the generations.
+	 * By default, it is the cpu time of the main thread.
+	 * @return the current time.
+	 */
+	protected long time() {
+		return util.Timer.getCpuTime();
+	}
+
+	/**
+	 * Evaluate the population of the current generation by the evaluator.
+	 */
+	protected void evaluatePopulation() {
+		evaluator.evaluatePopulation(this);
+	}
+
+	/**
+	 * Breed the population of the next generation by the breeder,
+	 * and rotate the evaluation model for it if needed.
+	 * @return the bred population.
+	 */
+	protected Population breedPopulation() {
+		Population newpop = breeder.breedPopulation(this);
+
+		// Generate new instances if needed
+		if (rotateEvalModel) {
+			ReactiveGPHHProblem problem = (ReactiveGPHHProblem)evaluatedProblem();
+			problem.rotateEvaluationModel();
+		}
+
+		return newpop;
+	}
+
 	@Override
 	public void run(int condition) {
 		if (condition == C_STARTED_FRESH) {
@@ -209,7 +272,7 @@ public class GPHHEvolutionState extends TerminalERCEvolutionState {
 		initStatFile();
 		setupStatistics();
 
-		start = util.Timer.getCpuTime();
+		start = time();
 
 		int result = R_NOTDONE;
 		while ( result == R_NOTDONE ) {
@@ -227,17 +290,20 @@ public class GPHHEvolutionState extends TerminalERCEvolutionState {
 
 	    // EVALUATION
 	    statistics.preEvaluationStatistics(this);
-	    evaluator.evaluatePopulation(this);
+	    evaluatePopulation();
 	    statistics.postEvaluationStatistics(this);
 
-		finish = util.Timer.getCpuTime();
+		finish = time();
 		duration = 1.0 * (finish - start) / 1000000000;
 
 		output.message("Generation " + generation + " elapsed " + duration + " seconds.");
 
+		if (evaluatedProblem() instanceof ReactiveGPHHProblem)
+			((ReactiveGPHHProblem)evaluatedProblem()).getEvaluationModel().reportStatistics(this);
+
 		writeToStatFile();
 
-		start = util.Timer.getCpuTime();
+		start = time();
 
 	    // SHOULD WE QUIT?
 	    if (evaluator.runComplete(this) && quitOnRunComplete) {
@@ -277,7 +343,7 @@ public class GPHHEvolutionState extends TerminalERCEvolutionState {
 	    // BREEDING
 	    statistics.preBreedingStatistics(this);
 
-	    population = breeder.breedPopulation(this);
+	    population = breedPopulation();
 
 	    // POST-BREEDING EXCHANGING
 	    statistics.postBreedingStatistics(this);
@@ -287,12 +353,6 @@ public class GPHHEvolutionState extends TerminalERCEvolutionState {
 	    population = exchanger.postBreedingExchangePopulation(this);
 	    statistics.postPostBreedingExchangeStatistics(this);
 
-	    // Generate new instances if needed
-		if (rotateEvalModel) {
-			ReactiveGPHHProblem problem = (ReactiveGPHHProblem)evaluator.p_problem;
-			problem.rotateEvaluationModel();
-		}
-
 	    // INCREMENT GENERATION AND CHECKPOINT
 	    generation++;
 	    if (checkpoint && generation%checkpointModulo == 0)
@@ -0,0 +1,41 @@
+package gphhucarp.gp;
+
+import ec.EvolutionState;
+import ec.eval.MasterProblem;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The master problem for the master/slave evaluation of a reactive GPHH problem (see ec.eval).
+ * The slaves set up the problem from the same parameters as the master,
+ * so each slave reads the instances and generates the samples once when it connects.
+ * The individuals are sent to the slaves in jobs (job-size), and their fitnesses are returned in order.
+ *
+ * Before the individuals of each job, the master sends the seed epoch of its evaluation model,
+ * i.e. the number of seed rotations so far. The slave rotates the seeds of its evaluation model
+ * to the same epoch, so the individuals are evaluated with the same seeds as on the master.
+ *
+ * The early termination and the fitness cache of a slave only know the individuals evaluated by the slave.
+ *
+ * See LocalSlaves to start the slaves on the local host.
+ */
+
+public class GPHHMasterProblem extends MasterProblem {
+
+    @Override
+    public void sendJobData(EvolutionState state, DataOutputStream dataOut) throws IOException {
+        ReactiveGPHHProblem reactiveProblem = (ReactiveGPHHProblem)problem;
+        dataOut.writeInt(reactiveProblem.getEvaluationModel().getSeedEpoch());
+    }
+
+    @Override
+    public void receiveJobData(EvolutionState state, DataInputStream dataIn) throws IOException {
+        int seedEpoch = dataIn.readInt();
+
+        // the problem of the slave is not replaced by the master problem
+        ReactiveGPHHProblem reactiveProblem = (ReactiveGPHHProblem)state.evaluator.p_problem;
+        reactiveProblem.getEvaluationModel().setSeedEpoch(seedEpoch);
+    }
+}
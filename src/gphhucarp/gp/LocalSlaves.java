@@ -0,0 +1,74 @@
+package gphhucarp.gp;
+
+import ec.eval.Slave;
+import ec.util.Parameter;
+import ec.util.ParameterDatabase;
+import gputils.SimpleEvolve;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run the GPHH as the master of the master/slave evaluation, and start the slaves
+ * as separate JVMs on the local host. The slaves are given the same arguments as the master,
+ * i.e. the same parameter file and parameters, so they set up the same problem.
+ * For example,
+ *  java gphhucarp.gp.LocalSlaves -file masterslave.params -p local-slaves=4
+ * More slaves can be started on other hosts by ec.eval.Slave with the same parameters
+ * and eval.master.host set to the master.
+ *
+ * The slaves write no statistics, and shut down when the master finishes.
+ */
+
+public class LocalSlaves {
+
+    public static final String P_LOCAL_SLAVES = "local-slaves";
+
+    public static void main(String[] args) {
+        ParameterDatabase parameters = SimpleEvolve.loadParameterDatabase(args);
+
+        Parameter p = new Parameter(P_LOCAL_SLAVES);
+        int numSlaves = parameters.getIntWithDefault(p, null, 1);
+
+        if (numSlaves < 0) {
+            System.err.println("ERROR:");
+            System.err.println("The number of local slaves must be non-negative.");
+            System.exit(1);
+        }
+
+        List<Process> slaves = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Process slave : slaves)
+                slave.destroy();
+        }));
+
+        for (int i = 0; i < numSlaves; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(Slave.class.getName());
+            for (String arg : args)
+                command.add(arg);
+            command.add("-p");
+            command.add("eval.slave.name=local-" + i);
+            command.add("-p");
+            command.add(Slave.P_SILENT + "=true");
+            command.add("-p");
+            command.add("stat.silent=true");
+
+            try {
+                slaves.add(new ProcessBuilder(command).inheritIO().start());
+            } catch (IOException e) {
+                System.err.println("ERROR:");
+                System.err.println("Unable to start local slave " + i + ": " + e);
+                System.exit(1);
+            }
+        }
+
+        // the slaves connect to the master once it starts listening
+        SimpleEvolve.main(args);
+    }
+}
@@ -0,0 +1,178 @@
+package gphhucarp.gp;
+
+import ec.EvolutionState;
+import ec.Fitness;
+import ec.Individual;
+import ec.Problem;
+import ec.gp.GPIndividual;
+import ec.multiobjective.MultiObjectiveFitness;
+import ec.simple.SimpleEvaluator;
+import ec.simple.SimpleProblemForm;
+import ec.util.Parameter;
+import gphhucarp.decisionprocess.routingpolicy.GPRoutingPolicy;
+import gphhucarp.gp.evaluation.MultiFidelityEvaluationModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The multi-fidelity evaluator evaluates the individuals of each subpopulation
+ * by the proxy of the multi-fidelity evaluation model first.
+ * The proxy evaluations are run by the threads of the simple evaluator (evalthreads).
+ * Then, only the best fraction (the promotion ratio of the generation) by the proxy fitness
+ * is promoted to the full evaluation. Like the simple evaluator, all the individuals are
+ * evaluated every generation, since the seeds of the evaluation model may have been rotated.
+ *
+ * The proxy fitness is not comparable with the full fitness. So the individuals not promoted
+ * are ranked after all the promoted individuals: each of them gets the next value above the worst fitness
+ * of the promoted individuals plus the difference between its proxy fitness and the best
+ * proxy fitness not promoted. The objective must be minimised.
+ */
+
+public class MultiFidelityEvaluator extends SimpleEvaluator {
+
+    @Override
+    public void setup(final EvolutionState state, final Parameter base) {
+        super.setup(state, base);
+
+        ReactiveGPHHProblem problem = (ReactiveGPHHProblem)p_problem;
+        if (!(problem.getEvaluationModel() instanceof MultiFidelityEvaluationModel)) {
+            System.err.println("ERROR:");
+            System.err.println("The multi-fidelity evaluator requires a multi-fidelity evaluation model.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check that the objective of every subpopulation is minimised.
+     * The species are set up with the population, i.e. after the evaluator.
+     */
+    @Override
+    public void initializeContacts(final EvolutionState state) {
+        super.initializeContacts(state);
+
+        for (int subpop = 0; subpop < state.population.subpops.length; subpop++) {
+            Fitness fitness = state.population.subpops[subpop].species.f_prototype;
+
+            if (!(fitness instanceof MultiObjectiveFitness) ||
+                    ((MultiObjectiveFitness)fitness).isMaximizing(0)) {
+                System.err.println("ERROR:");
+                System.err.println("The multi-fidelity evaluator requires a minimised multi-objective fitness, " +
+                        "but subpopulation " + subpop + " does not have one.");
+                System.exit(1);
+            }
+        }
+    }
+
+    @Override
+    public void evaluatePopulation(final EvolutionState state) {
+        ReactiveGPHHProblem problem = (ReactiveGPHHProblem)p_problem;
+        MultiFidelityEvaluationModel evaluationModel =
+                (MultiFidelityEvaluationModel)problem.getEvaluationModel();
+
+        double promotionRatio = evaluationModel.promotionRatio(state.generation);
+
+        if (promotionRatio >= 1) {
+            super.evaluatePopulation(state);
+            return;
+        }
+
+        // evaluate the individuals by the proxy, with the threads of the simple evaluator
+        p_problem = new ProxyProblem(problem);
+        try {
+            super.evaluatePopulation(state);
+        }
+        finally {
+            p_problem = problem;
+        }
+
+        // promote the best ones to the full evaluation
+        Individual[][] individuals = new Individual[state.population.subpops.length][];
+        List<List<Individual>> notPromoted = new ArrayList<>();
+        for (int s = 0; s < state.population.subpops.length; s++) {
+            individuals[s] = state.population.subpops[s].individuals;
+
+            List<Individual> candidates = new ArrayList<>();
+            for (Individual indi : individuals[s])
+                candidates.add(indi);
+
+            candidates.sort((o1, o2) -> Double.compare(
+                    ((MultiObjectiveFitness)o1.fitness).getObjective(0),
+                    ((MultiObjectiveFitness)o2.fitness).getObjective(0)));
+
+            int numPromoted = (int)Math.ceil(promotionRatio * candidates.size());
+            notPromoted.add(new ArrayList<>(candidates.subList(numPromoted, candidates.size())));
+
+            // only the promoted individuals are given to the simple evaluator
+            state.population.subpops[s].individuals =
+                    candidates.subList(0, numPromoted).toArray(new Individual[0]);
+        }
+
+        try {
+            super.evaluatePopulation(state);
+        }
+        finally {
+            for (int s = 0; s < state.population.subpops.length; s++)
+                state.population.subpops[s].individuals = individuals[s];
+        }
+
+        // rank the individuals not promoted after the promoted individuals
+        for (int s = 0; s < state.population.subpops.length; s++) {
+            List<Individual> rest = notPromoted.get(s);
+
+            if (rest.isEmpty())
+                continue;
+
+            Set<Individual> restSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            restSet.addAll(rest);
+
+            double worstPromoted = Double.NEGATIVE_INFINITY;
+            for (Individual indi : individuals[s]) {
+                if (restSet.contains(indi))
+                    continue;
+
+                double objective = ((MultiObjectiveFitness)indi.fitness).getObjective(0);
+                if (worstPromoted < objective)
+                    worstPromoted = objective;
+            }
+
+            double bestRestProxy = ((MultiObjectiveFitness)rest.get(0).fitness).getObjective(0);
+
+            // strictly after the worst promoted individual, or the proxy fitness if none is promoted
+            double restBase = worstPromoted == Double.NEGATIVE_INFINITY ?
+                    bestRestProxy : Math.nextUp(worstPromoted);
+
+            for (Individual indi : rest) {
+                MultiObjectiveFitness f = (MultiObjectiveFitness)indi.fitness;
+                f.setObjectives(state, new double[]{restBase + (f.getObjective(0) - bestRestProxy)});
+                indi.evaluated = true;
+            }
+        }
+    }
+
+    /**
+     * The problem to evaluate the individuals by the proxy of the multi-fidelity evaluation model.
+     * It is cloned for each evaluation thread like the problem of the simple evaluator.
+     */
+    private static class ProxyProblem extends Problem implements SimpleProblemForm {
+        private final ReactiveGPHHProblem problem;
+
+        private ProxyProblem(ReactiveGPHHProblem problem) {
+            this.problem = problem;
+        }
+
+        @Override
+        public void evaluate(EvolutionState state, Individual indi, int subpopulation, int threadnum) {
+            GPRoutingPolicy policy =
+                    new GPRoutingPolicy(problem.getPoolFilter(), ((GPIndividual)indi).trees[0],
+                            problem.getPriorityFunctionCompiler());
+
+            MultiFidelityEvaluationModel evaluationModel =
+                    (MultiFidelityEvaluationModel)problem.getEvaluationModel();
+            evaluationModel.evaluateProxy(policy, indi.fitness, state);
+        }
+    }
+}
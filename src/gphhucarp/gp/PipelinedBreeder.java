@@ -0,0 +1,103 @@
+package gphhucarp.gp;
+
+import ec.BreedingPipeline;
+import ec.EvolutionState;
+import ec.Population;
+import ec.simple.SimpleBreeder;
+import ec.util.Parameter;
+
+/**
+ * The breeder of the pipelined GPHH (see PipelinedGPHHEvolutionState).
+ * It breeds the new population in the same way as the simple breeder, but hands each individual
+ * of the new population (the elites, the bred and the copied individuals) to the evolution state
+ * as soon as it is in the new population, so that it is evaluated while the breeding continues.
+ * The selection is over the previous population only, so the generational semantics is preserved.
+ */
+
+public class PipelinedBreeder extends SimpleBreeder {
+
+    @Override
+    public void setup(final EvolutionState state, final Parameter base) {
+        super.setup(state, base);
+
+        if (!(state instanceof PipelinedGPHHEvolutionState)) {
+            System.err.println("ERROR:");
+            System.err.println("The pipelined breeder needs the pipelined GPHH evolution state.");
+            System.exit(1);
+        }
+    }
+
+    @Override
+    protected void loadElites(EvolutionState state, Population newpop) {
+        super.loadElites(state, newpop);
+
+        for (int subpop = 0; subpop < newpop.subpops.length; subpop++) {
+            if (!shouldBreedSubpop(state, subpop, 0))
+                continue;
+
+            int length = newpop.subpops[subpop].individuals.length;
+            for (int x = length - numElites(state, subpop); x < length; x++)
+                submit(state, newpop, subpop, x, x + 1);
+        }
+    }
+
+    @Override
+    protected void breedPopChunk(Population newpop, EvolutionState state, int[] numinds, int[] from, int threadnum) {
+        for (int subpop = 0; subpop < newpop.subpops.length; subpop++) {
+            if (!shouldBreedSubpop(state, subpop, threadnum)) {
+                // copy forward the part of the subpopulation we are assigned, as the simple breeder
+                for (int ind = from[subpop]; ind < numinds[subpop] - from[subpop]; ind++)
+                    newpop.subpops[subpop].individuals[ind] = state.population.subpops[subpop].individuals[ind];
+
+                submit(state, newpop, subpop, from[subpop], numinds[subpop] - from[subpop]);
+                continue;
+            }
+
+            BreedingPipeline bp;
+            if (clonePipelineAndPopulation)
+                bp = (BreedingPipeline)newpop.subpops[subpop].species.pipe_prototype.clone();
+            else
+                bp = newpop.subpops[subpop].species.pipe_prototype;
+
+            if (!bp.produces(state, newpop, subpop, threadnum))
+                state.output.fatal("The Breeding Pipeline of subpopulation " + subpop +
+                        " does not produce individuals of the expected species " +
+                        newpop.subpops[subpop].species.getClass().getName() +
+                        " or fitness " + newpop.subpops[subpop].species.f_prototype);
+
+            bp.prepareToProduce(state, subpop, threadnum);
+
+            // submit the individuals produced by each call, before producing the next ones
+            int x = from[subpop];
+            int upperbound = from[subpop] + numinds[subpop];
+            while (x < upperbound) {
+                int n = bp.produce(1, upperbound - x, x, subpop,
+                        newpop.subpops[subpop].individuals, state, threadnum);
+
+                if (x + n > upperbound)
+                    state.output.fatal("A breeding pipeline overwrote the space of another pipeline in subpopulation " +
+                            subpop + ". You need to check your breeding pipeline code (in produce() ).");
+
+                submit(state, newpop, subpop, x, x + n);
+                x += n;
+            }
+
+            bp.finishProducing(state, subpop, threadnum);
+        }
+    }
+
+    /**
+     * Submit a range of the individuals of a subpopulation of the new population to be evaluated.
+     * @param state the evolution state.
+     * @param newpop the new population.
+     * @param subpop the subpopulation.
+     * @param from the first individual (inclusive).
+     * @param to the last individual (exclusive).
+     */
+    private void submit(EvolutionState state, Population newpop, int subpop, int from, int to) {
+        PipelinedGPHHEvolutionState pipelinedState = (PipelinedGPHHEvolutionState)state;
+
+        for (int x = from; x < to; x++)
+            pipelinedState.submit(newpop.subpops[subpop].individuals[x], subpop);
+    }
+}
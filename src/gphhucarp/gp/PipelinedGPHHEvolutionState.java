@@ -0,0 +1,253 @@
+package gphhucarp.gp;
+
+import ec.EvolutionState;
+import ec.Individual;
+import ec.Population;
+import ec.eval.MasterProblem;
+import ec.simple.SimpleEvaluator;
+import ec.simple.SimpleProblemForm;
+import ec.steadystate.QueueIndividual;
+import ec.util.Parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The evolution state of the pipelined GPHH. It is generational as the GPHH evolution state,
+ * but the breeding and the evaluation of a generation overlap: the pipelined breeder (see PipelinedBreeder)
+ * submits each individual of the new population as soon as it is bred, and evalthreads evaluator threads
+ * evaluate the submitted individuals while the breeding continues. The selection is over the previous
+ * population only, so a generation is the same as the GPHH evolution state's, except for the evaluations
+ * depending on their order (e.g. the early termination and the fitness cache).
+ *
+ * The evaluation model is rotated for the new generation in the background while it is bred,
+ * and the evaluator threads wait for the rotation before evaluating.
+ * The initial population is evaluated by the evaluator as usual, and the individuals not submitted
+ * by the breeder (e.g. the immigrants of the exchanger) are evaluated at the end of the generation.
+ *
+ * The new generation is evaluated before the generation is incremented, so the evaluations get
+ * the generation being evaluated from evaluatedGeneration() rather than the current generation.
+ *
+ * Only the simple evaluator is supported, and the master/slave evaluation and checkpointing are not.
+ */
+
+public class PipelinedGPHHEvolutionState extends GPHHEvolutionState {
+
+    // the submitted individuals and the rotation are guarded by the lock
+    private final Object pipelineLock = new Object();
+    private int numPending; // the number of submitted individuals not evaluated yet
+    private boolean rotating;
+    private Set<Individual> submitted;
+    private volatile int evaluatedGeneration; // the generation being bred and evaluated
+
+    private BlockingQueue<QueueIndividual> individualQueue;
+    private List<Thread> evaluators;
+
+    @Override
+    public void setup(EvolutionState state, Parameter base) {
+        super.setup(state, base);
+
+        if (!(breeder instanceof PipelinedBreeder)) {
+            System.err.println("ERROR:");
+            System.err.println("The pipelined GPHH needs the pipelined breeder.");
+            System.exit(1);
+        }
+
+        // the evaluator evaluates the initial population only, the rest is evaluated by the evaluator threads
+        if (evaluator.getClass() != SimpleEvaluator.class) {
+            System.err.println("ERROR:");
+            System.err.println("The pipelined GPHH needs the simple evaluator.");
+            System.exit(1);
+        }
+
+        if (evaluator.p_problem instanceof MasterProblem) {
+            System.err.println("ERROR:");
+            System.err.println("The pipelined GPHH does not support the master/slave evaluation.");
+            System.exit(1);
+        }
+
+        if (checkpoint) {
+            System.err.println("ERROR:");
+            System.err.println("The pipelined GPHH does not support checkpointing.");
+            System.exit(1);
+        }
+
+        submitted = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * The evaluations are on other threads, so the wall clock time is used instead of the cpu time.
+     */
+    @Override
+    protected long time() {
+        return System.nanoTime();
+    }
+
+    /**
+     * The new generation is evaluated while it is bred, i.e. before the generation is incremented.
+     */
+    @Override
+    public int evaluatedGeneration() {
+        return evaluatedGeneration;
+    }
+
+    @Override
+    protected void evaluatePopulation() {
+        if (generation == 0) {
+            evaluator.evaluatePopulation(this);
+            return;
+        }
+
+        // the individuals not bred by the breeder, e.g. the immigrants
+        for (int subpop = 0; subpop < population.subpops.length; subpop++) {
+            for (Individual indi : population.subpops[subpop].individuals) {
+                if (!submitted.contains(indi))
+                    submit(indi, subpop);
+            }
+        }
+
+        synchronized (pipelineLock) {
+            while (numPending > 0) {
+                try {
+                    pipelineLock.wait();
+                } catch (InterruptedException e) {
+                    output.fatal("The main thread got interrupted while waiting for the evaluations.");
+                }
+            }
+
+            submitted.clear();
+        }
+    }
+
+    @Override
+    protected Population breedPopulation() {
+        evaluatedGeneration = generation + 1;
+
+        if (evaluators == null)
+            startEvaluators();
+
+        if (rotateEvalModel)
+            startRotation();
+
+        return breeder.breedPopulation(this);
+    }
+
+    @Override
+    public void finish(int result) {
+        stopEvaluators();
+        super.finish(result);
+    }
+
+    /**
+     * Submit an individual of the new population to be evaluated.
+     * It is called by the breeder, possibly by several breeding threads.
+     * @param indi the individual.
+     * @param subpop the subpopulation of the individual.
+     */
+    public void submit(Individual indi, int subpop) {
+        synchronized (pipelineLock) {
+            numPending ++;
+            submitted.add(indi);
+        }
+
+        individualQueue.add(new QueueIndividual(indi, subpop));
+    }
+
+    /**
+     * Rotate the evaluation model on a background thread.
+     * The evaluator threads wait until the rotation is finished.
+     */
+    private void startRotation() {
+        synchronized (pipelineLock) {
+            rotating = true;
+        }
+
+        Thread rotation = new Thread(() -> {
+            try {
+                ((ReactiveGPHHProblem)evaluatedProblem()).rotateEvaluationModel();
+            } finally {
+                synchronized (pipelineLock) {
+                    rotating = false;
+                    pipelineLock.notifyAll();
+                }
+            }
+        }, "Pipelined rotation");
+
+        rotation.setDaemon(true);
+        rotation.start();
+    }
+
+    /**
+     * Start the evaluator threads, each with its own clone of the problem.
+     */
+    private void startEvaluators() {
+        individualQueue = new LinkedBlockingQueue<>();
+        evaluators = new ArrayList<>();
+
+        for (int t = 0; t < evalthreads; t++) {
+            final int thread = t;
+            final SimpleProblemForm problem = (SimpleProblemForm)evaluator.p_problem.clone();
+            evaluators.add(new Thread(() -> evaluate(problem, thread), "Pipelined evaluator " + t));
+        }
+
+        for (Thread evaluator : evaluators) {
+            evaluator.setDaemon(true);
+            evaluator.start();
+        }
+    }
+
+    /**
+     * Stop the evaluator threads.
+     */
+    private void stopEvaluators() {
+        if (evaluators == null)
+            return;
+
+        for (Thread evaluator : evaluators)
+            evaluator.interrupt();
+
+        for (Thread evaluator : evaluators) {
+            try {
+                evaluator.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        evaluators = null;
+    }
+
+    /**
+     * Evaluate the submitted individuals until interrupted.
+     * @param problem the problem of the thread.
+     * @param thread the thread number.
+     */
+    private void evaluate(SimpleProblemForm problem, int thread) {
+        try {
+            while (true) {
+                QueueIndividual qi = individualQueue.take();
+
+                synchronized (pipelineLock) {
+                    while (rotating)
+                        pipelineLock.wait();
+                }
+
+                try {
+                    problem.evaluate(this, qi.ind, qi.subpop, thread);
+                } finally {
+                    synchronized (pipelineLock) {
+                        numPending --;
+                        pipelineLock.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package gphhucarp.gp;
+
+import gphhucarp.core.Arc;
+
+import java.util.List;
+
+/**
+ * A priority function calculates the priority of a candidate task,
+ * given the priority calculation problem (the candidate, route and state).
+ * It is compiled from a GP tree by the priority function compiler.
+ */
+
+public interface PriorityFunction {
+
+    double eval(CalcPriorityProblem problem);
+
+    /**
+     * Calculate the priorities of a batch of candidates for the same route and state.
+     * By default, the candidates are evaluated one by one.
+     * @param problem the priority calculation problem with the route and state.
+     * @param candidates the candidates.
+     * @param values the priorities of the candidates.
+     */
+    default void evalBatch(CalcPriorityProblem problem, List<Arc> candidates, double[] values) {
+        int i = 0;
+        for (Arc candidate : candidates) {
+            problem.setCandidate(candidate);
+            values[i++] = eval(problem);
+        }
+    }
+
+    /**
+     * Calculate the priorities of the candidates of a number of decisions packed together,
+     * e.g. the decisions of the same policy on different samples. Each decision has its own route and state.
+     * By default, the candidates are evaluated one by one.
+     * @param problems the priority calculation problems with the route and state of each decision.
+     * @param candidates the candidates of each decision.
+     * @param values the priorities of the candidates, packed in the order of the decisions.
+     */
+    default void evalPacked(CalcPriorityProblem[] problems, List<List<Arc>> candidates, double[] values) {
+        int i = 0;
+        for (int d = 0; d < candidates.size(); d++) {
+            for (Arc candidate : candidates.get(d)) {
+                problems[d].setCandidate(candidate);
+                values[i++] = eval(problems[d]);
+            }
+        }
+    }
+}
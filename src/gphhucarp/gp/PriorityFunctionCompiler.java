@@ -0,0 +1,558 @@
+package gphhucarp.gp;
+
+import ec.gp.GPNode;
+import gphhucarp.gp.terminal.FeatureGPNode;
+import gputils.function.Add;
+import gputils.function.Div;
+import gputils.function.If;
+import gputils.function.Max;
+import gputils.function.Min;
+import gputils.function.Mul;
+import gputils.function.Sub;
+import gputils.terminal.ConstantTerminal;
+import gputils.terminal.DoubleERC;
+import gputils.terminal.TerminalERC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The compiler of the priority functions from GP trees.
+ *
+ * By default, a tree is flattened into a postfix program (see FlattenedTree).
+ * If the bytecode generation is enabled, a tree is compiled into a hidden class
+ * with a straight-line eval method instead, which can be JIT-compiled and inlined by the JVM.
+ * The bytecode does exactly what the GP nodes do, so the result is identical to the tree evaluation.
+ *
+ * The bytecode generation falls back to the flattened tree if
+ *  - the tree is larger than the maximal size, or
+ *  - the tree has a node other than the features, constants, Add, Sub, Mul, Div, Max, Min and If.
+ *
+ * The compiled classes are cached by the canonical form of the trees, i.e. the node
+ * classes and constant values in prefix order. The same tree (e.g. an elite or a reproduced
+ * individual) reuses the compiled class, only with its own feature nodes.
+ * The cache is cleared once it reaches its capacity.
+ *
+ * The settings belong to a compiler instance (e.g. the one of the GPHH problem),
+ * while the cache of the compiled classes is shared, as it does not depend on the settings.
+ */
+
+public class PriorityFunctionCompiler {
+
+    private static final String CLASS_NAME = "gphhucarp/gp/GeneratedPriorityFunction";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String PRIORITY_FUNCTION = "gphhucarp/gp/PriorityFunction";
+    private static final String FEATURE_GP_NODE = "gphhucarp/gp/terminal/FeatureGPNode";
+    private static final String CALC_PRIORITY_PROBLEM = "gphhucarp/gp/CalcPriorityProblem";
+    private static final String FEATURES_DESC = "[L" + FEATURE_GP_NODE + ";";
+
+    private static int cacheCapacity = 100000;
+
+    private static final Map<String, Constructor<?>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The compiler with the default settings, i.e. the flattened trees only.
+     */
+    public static final PriorityFunctionCompiler DEFAULT =
+            new PriorityFunctionCompiler(false, 500, FlattenedTree.DEFAULT_MIN_BATCH_SIZE);
+
+    private final boolean bytecodeEnabled;
+    private final int maxTreeSize;
+    private final int minBatchSize; // of the flattened trees
+
+    public PriorityFunctionCompiler(boolean bytecodeEnabled, int maxTreeSize, int minBatchSize) {
+        this.bytecodeEnabled = bytecodeEnabled;
+        this.maxTreeSize = maxTreeSize;
+        this.minBatchSize = minBatchSize;
+    }
+
+    public boolean isBytecodeEnabled() {
+        return bytecodeEnabled;
+    }
+
+    public int getMaxTreeSize() {
+        return maxTreeSize;
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public static int getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public static void setCacheCapacity(int cacheCapacity) {
+        PriorityFunctionCompiler.cacheCapacity = cacheCapacity;
+    }
+
+    /**
+     * Compile a GP tree into a priority function.
+     * @param root the root node of the tree.
+     * @return the priority function.
+     */
+    public PriorityFunction compile(GPNode root) {
+        if (!bytecodeEnabled)
+            return FlattenedTree.flatten(root, minBatchSize);
+
+        // the canonical form and the features of the tree
+        StringBuilder key = new StringBuilder();
+        List<FeatureGPNode> features = new ArrayList<>();
+        int size = canonicalForm(root, key, features);
+
+        if (size < 0 || size > maxTreeSize)
+            return FlattenedTree.flatten(root, minBatchSize);
+
+        String canonical = key.toString();
+        Constructor<?> constructor = cache.get(canonical);
+
+        try {
+            if (constructor == null) {
+                byte[] bytes = new ClassGenerator().generate(root);
+                if (bytes == null)
+                    return FlattenedTree.flatten(root, minBatchSize);
+
+                Class<?> c = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+                constructor = c.getConstructor(FeatureGPNode[].class);
+
+                if (cache.size() >= cacheCapacity)
+                    cache.clear();
+                cache.put(canonical, constructor);
+            }
+
+            return (PriorityFunction)constructor.newInstance(
+                    (Object)features.toArray(new FeatureGPNode[0]));
+        } catch (ReflectiveOperationException | IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Write the canonical form of a tree, and collect its features in prefix order.
+     * @param node the root node of the tree.
+     * @param key the canonical form.
+     * @param features the features.
+     * @return the size of the tree, or -1 if some node is not supported.
+     */
+    private static int canonicalForm(GPNode node, StringBuilder key, List<FeatureGPNode> features) {
+        GPNode terminal = node;
+        if (node instanceof TerminalERC)
+            terminal = ((TerminalERC)node).getTerminal();
+
+        if (terminal instanceof FeatureGPNode) {
+            key.append(terminal.getClass().getName()).append(' ');
+            features.add((FeatureGPNode)terminal);
+            return 1;
+        }
+
+        if (terminal instanceof ConstantTerminal) {
+            key.append(Double.doubleToRawLongBits(((ConstantTerminal)terminal).getValue())).append(' ');
+            return 1;
+        }
+
+        if (node instanceof DoubleERC) {
+            key.append(Double.doubleToRawLongBits(((DoubleERC)node).value)).append(' ');
+            return 1;
+        }
+
+        if (ClassGenerator.opcode(node) < 0 && node.getClass() != If.class)
+            return -1;
+
+        key.append('(').append(node.getClass().getSimpleName()).append(' ');
+        int size = 1;
+        for (GPNode child : node.children) {
+            int childSize = canonicalForm(child, key, features);
+            if (childSize < 0)
+                return -1;
+
+            size += childSize;
+        }
+        key.append(") ");
+
+        return size;
+    }
+
+    /**
+     * The generator of the class file of a priority function.
+     * The class has a constructor with the features, and an eval method.
+     * The class file version is 49, so no stack map frame is required.
+     */
+    private static class ClassGenerator {
+        // the opcodes of the JVM
+        static final int ALOAD_0 = 0x2a;
+        static final int ALOAD_1 = 0x2b;
+        static final int DCONST_0 = 0x0e;
+        static final int DCONST_1 = 0x0f;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC2_W = 0x14;
+        static final int DLOAD = 0x18;
+        static final int AALOAD = 0x32;
+        static final int DSTORE = 0x39;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6b;
+        static final int DDIV = 0x6f;
+        static final int DCMPL = 0x97;
+        static final int DCMPG = 0x98;
+        static final int IFGE = 0x9c;
+        static final int IFLE = 0x9e;
+        static final int GOTO = 0xa7;
+        static final int DRETURN = 0xaf;
+        static final int RETURN = 0xb1;
+        static final int GETFIELD = 0xb4;
+        static final int PUTFIELD = 0xb5;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+
+        // the two temporary doubles for Max and Min, after this and the problem
+        static final int TEMP_A = 2;
+        static final int TEMP_B = 4;
+        static final int MAX_LOCALS = 6;
+
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        DataOutputStream poolOut = new DataOutputStream(pool);
+        Map<String, Integer> poolIndices = new HashMap<>();
+        int poolCount = 1;
+
+        ByteArrayOutputStream code;
+        int stackSize; // in slots
+        int maxStackSize;
+        int numFeatures;
+
+        static int opcode(GPNode node) {
+            Class<?> c = node.getClass();
+
+            if (c == Add.class)
+                return DADD;
+            if (c == Sub.class)
+                return DSUB;
+            if (c == Mul.class)
+                return DMUL;
+            if (c == Div.class)
+                return DDIV;
+            if (c == Max.class)
+                return 0;
+            if (c == Min.class)
+                return 1;
+
+            return -1;
+        }
+
+        /**
+         * Generate the class file of a tree.
+         * @param root the root node of the tree.
+         * @return the class file, or null if the method is too large.
+         */
+        byte[] generate(GPNode root) throws IOException {
+            int thisClass = classRef(CLASS_NAME);
+            int superClass = classRef(OBJECT);
+            int interfaceClass = classRef(PRIORITY_FUNCTION);
+            int featuresField = memberRef(9, CLASS_NAME, "features", FEATURES_DESC);
+            int objectInit = memberRef(10, OBJECT, "<init>", "()V");
+            int featureValue = memberRef(10, FEATURE_GP_NODE, "value",
+                    "(L" + CALC_PRIORITY_PROBLEM + ";)D");
+            int codeName = utf8("Code");
+
+            // the constructor
+            ByteArrayOutputStream initCode = new ByteArrayOutputStream();
+            initCode.write(ALOAD_0);
+            initCode.write(INVOKESPECIAL);
+            writeShort(initCode, objectInit);
+            initCode.write(ALOAD_0);
+            initCode.write(ALOAD_1);
+            initCode.write(PUTFIELD);
+            writeShort(initCode, featuresField);
+            initCode.write(RETURN);
+
+            // the eval method
+            code = new ByteArrayOutputStream();
+            stackSize = 0;
+            maxStackSize = 0;
+            numFeatures = 0;
+            generate(root, featuresField, featureValue);
+            code.write(DRETURN);
+
+            if (code.size() > Short.MAX_VALUE)
+                return null;
+
+            int initName = utf8("<init>");
+            int initDesc = utf8("(" + FEATURES_DESC + ")V");
+            int evalName = utf8("eval");
+            int evalDesc = utf8("(L" + CALC_PRIORITY_PROBLEM + ";)D");
+            int fieldName = utf8("features");
+            int fieldDesc = utf8(FEATURES_DESC);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0); // minor version
+            out.writeShort(49); // major version
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+
+            // the features field: private final
+            out.writeShort(1);
+            out.writeShort(0x0002 | 0x0010);
+            out.writeShort(fieldName);
+            out.writeShort(fieldDesc);
+            out.writeShort(0);
+
+            // the methods: public
+            out.writeShort(2);
+            writeMethod(out, initName, initDesc, codeName, 2, 2, initCode.toByteArray());
+            writeMethod(out, evalName, evalDesc, codeName, maxStackSize, MAX_LOCALS, code.toByteArray());
+
+            out.writeShort(0); // no class attribute
+
+            return bytes.toByteArray();
+        }
+
+        void writeMethod(DataOutputStream out, int name, int desc, int codeName,
+                         int maxStack, int maxLocals, byte[] methodCode) throws IOException {
+            out.writeShort(0x0001);
+            out.writeShort(name);
+            out.writeShort(desc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + methodCode.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(methodCode.length);
+            out.write(methodCode);
+            out.writeShort(0); // no exception table
+            out.writeShort(0); // no code attribute
+        }
+
+        /**
+         * Generate the code of a node, which pushes its value onto the stack.
+         */
+        void generate(GPNode node, int featuresField, int featureValue) throws IOException {
+            GPNode terminal = node;
+            if (node instanceof TerminalERC)
+                terminal = ((TerminalERC)node).getTerminal();
+
+            if (terminal instanceof FeatureGPNode) {
+                // this.features[i].value(problem)
+                code.write(ALOAD_0);
+                code.write(GETFIELD);
+                writeShort(code, featuresField);
+                pushInt(numFeatures);
+                code.write(AALOAD);
+                code.write(ALOAD_1);
+                code.write(INVOKEVIRTUAL);
+                writeShort(code, featureValue);
+                numFeatures ++;
+                grow(3, 2);
+            }
+            else if (terminal instanceof ConstantTerminal) {
+                pushDouble(((ConstantTerminal)terminal).getValue());
+            }
+            else if (node instanceof DoubleERC) {
+                pushDouble(((DoubleERC)node).value);
+            }
+            else if (node.getClass() == If.class) {
+                // if (cond > 0) then else, NaN is not positive
+                generate(node.children[0], featuresField, featureValue);
+                code.write(DCONST_0);
+                grow(0, 2);
+                code.write(DCMPL);
+                int jumpToElse = jump(IFLE);
+                stackSize -= 4;
+                generate(node.children[1], featuresField, featureValue);
+                int jumpToEnd = jump(GOTO);
+                stackSize -= 2;
+                patch(jumpToElse);
+                generate(node.children[2], featuresField, featureValue);
+                patch(jumpToEnd);
+            }
+            else {
+                generate(node.children[0], featuresField, featureValue);
+                generate(node.children[1], featuresField, featureValue);
+
+                int opcode = opcode(node);
+                if (opcode > 1) {
+                    code.write(opcode);
+                    stackSize -= 2;
+                    return;
+                }
+
+                // Max: (b < a) ? a : b, Min: (b > a) ? a : b, where a and b are the children
+                store(TEMP_B);
+                store(TEMP_A);
+                load(TEMP_B);
+                load(TEMP_A);
+                int jumpToB;
+                if (opcode == 0) {
+                    code.write(DCMPG);
+                    jumpToB = jump(IFGE);
+                }
+                else {
+                    code.write(DCMPL);
+                    jumpToB = jump(IFLE);
+                }
+                stackSize -= 4;
+                load(TEMP_A);
+                int jumpToEnd = jump(GOTO);
+                stackSize -= 2;
+                patch(jumpToB);
+                load(TEMP_B);
+                patch(jumpToEnd);
+            }
+        }
+
+        void grow(int extra, int pushed) {
+            if (maxStackSize < stackSize + extra + 2)
+                maxStackSize = stackSize + extra + 2;
+
+            stackSize += pushed;
+
+            if (maxStackSize < stackSize)
+                maxStackSize = stackSize;
+        }
+
+        void pushInt(int value) {
+            if (value <= Byte.MAX_VALUE) {
+                code.write(BIPUSH);
+                code.write(value);
+            }
+            else {
+                code.write(SIPUSH);
+                writeShort(code, value);
+            }
+        }
+
+        void pushDouble(double value) throws IOException {
+            long bits = Double.doubleToRawLongBits(value);
+
+            if (bits == Double.doubleToRawLongBits(0.0)) {
+                code.write(DCONST_0);
+            }
+            else if (bits == Double.doubleToRawLongBits(1.0)) {
+                code.write(DCONST_1);
+            }
+            else {
+                code.write(LDC2_W);
+                writeShort(code, doubleConstant(value));
+            }
+
+            grow(0, 2);
+        }
+
+        void store(int local) {
+            code.write(DSTORE);
+            code.write(local);
+            stackSize -= 2;
+        }
+
+        void load(int local) {
+            code.write(DLOAD);
+            code.write(local);
+            grow(0, 2);
+        }
+
+        /**
+         * Write a jump with an offset to be patched.
+         * @return the position of the jump.
+         */
+        int jump(int opcode) {
+            int position = code.size();
+            code.write(opcode);
+            writeShort(code, 0);
+            return position;
+        }
+
+        /**
+         * Patch the offset of a jump to the current position.
+         */
+        void patch(int position) {
+            byte[] bytes = code.toByteArray();
+            int offset = bytes.length - position;
+            bytes[position + 1] = (byte)(offset >> 8);
+            bytes[position + 2] = (byte)offset;
+
+            code.reset();
+            code.write(bytes, 0, bytes.length);
+        }
+
+        static void writeShort(ByteArrayOutputStream out, int value) {
+            out.write(value >> 8);
+            out.write(value);
+        }
+
+        int utf8(String value) throws IOException {
+            Integer index = poolIndices.get("U" + value);
+            if (index == null) {
+                poolOut.writeByte(1);
+                poolOut.writeUTF(value);
+                index = poolCount ++;
+                poolIndices.put("U" + value, index);
+            }
+
+            return index;
+        }
+
+        int classRef(String name) throws IOException {
+            Integer index = poolIndices.get("C" + name);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                poolOut.writeByte(7);
+                poolOut.writeShort(nameIndex);
+                index = poolCount ++;
+                poolIndices.put("C" + name, index);
+            }
+
+            return index;
+        }
+
+        /**
+         * A field (tag 9) or method (tag 10) reference.
+         */
+        int memberRef(int tag, String owner, String name, String desc) throws IOException {
+            int classIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descIndex = utf8(desc);
+
+            poolOut.writeByte(12); // name and type
+            poolOut.writeShort(nameIndex);
+            poolOut.writeShort(descIndex);
+            int nameAndType = poolCount ++;
+
+            poolOut.writeByte(tag);
+            poolOut.writeShort(classIndex);
+            poolOut.writeShort(nameAndType);
+
+            return poolCount ++;
+        }
+
+        int doubleConstant(double value) throws IOException {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = poolIndices.get(key);
+            if (index == null) {
+                poolOut.writeByte(6);
+                poolOut.writeLong(Double.doubleToRawLongBits(value));
+                index = poolCount;
+                poolCount += 2; // a double takes two entries
+                poolIndices.put(key, index);
+            }
+
+            return index;
+        }
+    }
+}
@@ -3,7 +3,9 @@ package gphhucarp.gp;
 import ec.EvolutionState;
 import ec.Individual;
 import ec.gp.GPIndividual;
+import ec.gp.GPNode;
 import ec.gp.GPProblem;
+import ec.gp.GPTree;
 import ec.simple.SimpleProblemForm;
 import ec.util.Parameter;
 import gphhucarp.core.Objective;
@@ -11,6 +13,7 @@ import gphhucarp.decisionprocess.TieBreaker;
 import gphhucarp.decisionprocess.routingpolicy.GPRoutingPolicy;
 import gphhucarp.decisionprocess.PoolFilter;
 import gphhucarp.gp.evaluation.EvaluationModel;
+import gphhucarp.gp.evaluation.RacingEvaluationModel;
 
 import java.util.List;
 
@@ -25,10 +28,14 @@ public class ReactiveGPHHProblem extends GPProblem implements SimpleProblemForm
     public static final String P_EVAL_MODEL = "eval-model";
     public static final String P_POOL_FILTER = "pool-filter";
     public static final String P_TIE_BREAKER = "tie-breaker";
+    public static final String P_BYTECODE = "bytecode";
+    public static final String P_BYTECODE_MAX_TREE_SIZE = "bytecode-max-tree-size";
+    public static final String P_MIN_BATCH_SIZE = "min-batch-size";
 
     protected EvaluationModel evaluationModel;
     protected PoolFilter poolFilter;
     protected TieBreaker tieBreaker;
+    protected PriorityFunctionCompiler priorityFunctionCompiler;
 
     public List<Objective> getObjectives() {
         return evaluationModel.getObjectives();
@@ -46,6 +53,10 @@ public class ReactiveGPHHProblem extends GPProblem implements SimpleProblemForm
         return tieBreaker;
     }
 
+    public PriorityFunctionCompiler getPriorityFunctionCompiler() {
+        return priorityFunctionCompiler;
+    }
+
     public void rotateEvaluationModel() {
         evaluationModel.rotateSeeds();
     }
@@ -69,6 +80,18 @@ public class ReactiveGPHHProblem extends GPProblem implements SimpleProblemForm
         tieBreaker = (TieBreaker)(
                 state.parameters.getInstanceForParameter(
                         p, null, TieBreaker.class));
+
+        // whether to compile the GP trees into bytecode to calculate the priorities
+        p = base.push(P_BYTECODE);
+        boolean bytecodeEnabled = state.parameters.getBoolean(p, null, false);
+        p = base.push(P_BYTECODE_MAX_TREE_SIZE);
+        int maxTreeSize = state.parameters.getIntWithDefault(p, null, 500);
+
+        // the minimal number of candidates to calculate their priorities in a batch
+        p = base.push(P_MIN_BATCH_SIZE);
+        int minBatchSize = state.parameters.getIntWithDefault(p, null, FlattenedTree.DEFAULT_MIN_BATCH_SIZE);
+
+        priorityFunctionCompiler = new PriorityFunctionCompiler(bytecodeEnabled, maxTreeSize, minBatchSize);
     }
 
     @Override
@@ -76,11 +99,23 @@ public class ReactiveGPHHProblem extends GPProblem implements SimpleProblemForm
                          Individual indi,
                          int subpopulation,
                          int threadnum) {
-        GPRoutingPolicy policy =
-                new GPRoutingPolicy(poolFilter, ((GPIndividual)indi).trees[0]);
+        // the tree is simplified once, for both the canonical form and the policy
+        GPTree tree = ((GPIndividual)indi).trees[0];
+        GPNode simplifiedRoot = TreeSimplifier.simplify(tree.child);
+        GPRoutingPolicy policy = new GPRoutingPolicy(poolFilter, tree, simplifiedRoot, priorityFunctionCompiler);
+
+        // the canonical form of the simplified tree, to reuse the fitness of a duplicated individual
+        String canonicalForm = null;
+        if (evaluationModel.isFitnessCache())
+            canonicalForm = CanonicalTree.canonicalForm(simplifiedRoot);
 
         // the evaluation model is reactive, so no plan is specified.
-        evaluationModel.evaluate(policy, null, indi.fitness, state);
+        // an individual still evaluated is carried over from the previous generation, e.g. an elite,
+        // so it is not raced, but simulated on all the samples
+        if (indi.evaluated && evaluationModel instanceof RacingEvaluationModel)
+            ((RacingEvaluationModel)evaluationModel).evaluateFully(policy, indi.fitness, state);
+        else
+            evaluationModel.evaluate(canonicalForm, policy, null, indi.fitness, state);
 
         indi.evaluated = true;
     }
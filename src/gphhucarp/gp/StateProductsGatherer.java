@@ -0,0 +1,44 @@
+package gphhucarp.gp;
+
+import ec.gp.GPNode;
+import ec.gp.GPNodeGatherer;
+import gphhucarp.decisionprocess.StateProduct;
+import gphhucarp.gp.terminal.FeatureGPNode;
+import gputils.terminal.TerminalERC;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The GP node gatherer that collects the state products required by the feature terminals.
+ * The terminals wrapped by terminal ERCs are also considered.
+ */
+
+public class StateProductsGatherer extends GPNodeGatherer {
+
+    private Set<StateProduct> products;
+
+    public StateProductsGatherer() {
+        super();
+        products = EnumSet.noneOf(StateProduct.class);
+    }
+
+    public Set<StateProduct> getProducts() {
+        return products;
+    }
+
+    @Override
+    public boolean test(GPNode thisNode) {
+        GPNode node = thisNode;
+
+        if (node instanceof TerminalERC)
+            node = ((TerminalERC)node).getTerminal();
+
+        if (!(node instanceof FeatureGPNode))
+            return false;
+
+        products.addAll(((FeatureGPNode)node).requiredStateProducts());
+
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+package gphhucarp.gp;
+
+import ec.gp.GPNode;
+import gphhucarp.gp.terminal.FeatureGPNode;
+import gputils.function.Add;
+import gputils.function.Div;
+import gputils.function.If;
+import gputils.function.Max;
+import gputils.function.Min;
+import gputils.function.Mul;
+import gputils.function.Sub;
+import gputils.terminal.ConstantTerminal;
+import gputils.terminal.DoubleERC;
+import gputils.terminal.TerminalERC;
+
+/**
+ * The structural simplifier of GP trees for evaluation.
+ * Unlike LispUtils.simplifyExpression, it works on the GP nodes, and the simplified tree
+ * has exactly the same value as the original tree for every input, including the infinite
+ * and NaN values of the features (e.g. no feasible alternative route). The rules are
+ *  - constant folding: an operation on constants is replaced by its value,
+ *  - max(a, a) = a, min(a, a) = a,
+ *  - a * 1 = 1 * a = a, a / 1 = a, a - 0 = a, a + (-0) = (-0) + a = a,
+ *  - if (c, a, a) = a, and if with a constant condition is replaced by its branch.
+ * The rules such as a - a = 0, a / a = 1 and 0 * a = 0 are not applied, since they do not hold
+ * for the infinite and NaN values. The division is not protected, as in the Div node.
+ *
+ * The original tree is not changed, so the genotype for breeding stays the same.
+ * The new function nodes are light clones of the original nodes, while the leaves are shared.
+ */
+
+public class TreeSimplifier {
+
+    /**
+     * Simplify a tree.
+     * @param node the root node of the tree.
+     * @return the root node of the simplified tree.
+     */
+    public static GPNode simplify(GPNode node) {
+        if (node.children.length == 0)
+            return node;
+
+        GPNode[] children = new GPNode[node.children.length];
+        for (int i = 0; i < children.length; i++)
+            children[i] = simplify(node.children[i]);
+
+        Class<?> c = node.getClass();
+
+        if (c == If.class) {
+            if (isConstant(children[0])) {
+                if (constantValue(children[0]) > 0)
+                    return children[1];
+
+                return children[2];
+            }
+
+            if (equivalent(children[1], children[2]))
+                return children[1];
+
+            return copy(node, children);
+        }
+
+        if (c != Add.class && c != Sub.class && c != Mul.class && c != Div.class &&
+                c != Max.class && c != Min.class)
+            return copy(node, children);
+
+        GPNode a = children[0];
+        GPNode b = children[1];
+
+        if (isConstant(a) && isConstant(b))
+            return new ConstantTerminal(apply(c, constantValue(a), constantValue(b)));
+
+        if (c == Max.class || c == Min.class) {
+            if (equivalent(a, b))
+                return a;
+        }
+        else if (c == Mul.class) {
+            if (isConstant(b, 1.0))
+                return a;
+            if (isConstant(a, 1.0))
+                return b;
+        }
+        else if (c == Div.class) {
+            if (isConstant(b, 1.0))
+                return a;
+        }
+        else if (c == Sub.class) {
+            if (isConstant(b, 0.0))
+                return a;
+        }
+        else {
+            if (isConstant(b, -0.0))
+                return a;
+            if (isConstant(a, -0.0))
+                return b;
+        }
+
+        return copy(node, children);
+    }
+
+    /**
+     * Apply a binary operation exactly as its GP node does.
+     */
+    private static double apply(Class<?> c, double a, double b) {
+        if (c == Add.class)
+            return a + b;
+        if (c == Sub.class)
+            return a - b;
+        if (c == Mul.class)
+            return a * b;
+        if (c == Div.class)
+            return a / b;
+        if (c == Max.class)
+            return (b < a) ? a : b;
+
+        return (b > a) ? a : b;
+    }
+
+    private static GPNode copy(GPNode node, GPNode[] children) {
+        // the parents of the children are not set, since the children may be the original nodes
+        GPNode copied = node.lightClone();
+        copied.children = children;
+
+        return copied;
+    }
+
+    private static GPNode unwrap(GPNode node) {
+        if (node instanceof TerminalERC)
+            return ((TerminalERC)node).getTerminal();
+
+        return node;
+    }
+
+    private static boolean isConstant(GPNode node) {
+        GPNode terminal = unwrap(node);
+
+        return terminal instanceof ConstantTerminal || terminal instanceof DoubleERC;
+    }
+
+    private static boolean isConstant(GPNode node, double value) {
+        return isConstant(node) &&
+                Double.doubleToRawLongBits(constantValue(node)) == Double.doubleToRawLongBits(value);
+    }
+
+    private static double constantValue(GPNode node) {
+        GPNode terminal = unwrap(node);
+
+        if (terminal instanceof ConstantTerminal)
+            return ((ConstantTerminal)terminal).getValue();
+
+        return ((DoubleERC)terminal).value;
+    }
+
+    /**
+     * Whether two trees always have the same value.
+     * The features of the same class are the same, and the constants of the same bits are the same.
+     */
+    private static boolean equivalent(GPNode node1, GPNode node2) {
+        if (isConstant(node1) || isConstant(node2)) {
+            return isConstant(node1) && isConstant(node2) &&
+                    Double.doubleToRawLongBits(constantValue(node1)) ==
+                            Double.doubleToRawLongBits(constantValue(node2));
+        }
+
+        GPNode terminal1 = unwrap(node1);
+        GPNode terminal2 = unwrap(node2);
+
+        if (terminal1 instanceof FeatureGPNode || terminal2 instanceof FeatureGPNode)
+            return terminal1.getClass() == terminal2.getClass();
+
+        if (node1.getClass() != node2.getClass() ||
+                node1.children.length != node2.children.length)
+            return false;
+
+        if (node1.children.length == 0)
+            return node1.rootedTreeEquals(node2);
+
+        for (int i = 0; i < node1.children.length; i++) {
+            if (!equivalent(node1.children[i], node2.children[i]))
+                return false;
+        }
+
+        return true;
+    }
+}
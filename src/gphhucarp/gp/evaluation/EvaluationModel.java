@@ -13,17 +13,28 @@ import gphhucarp.representation.route.TaskSeqRoute;
 import gphhucarp.decisionprocess.DecisionProcess;
 import gphhucarp.decisionprocess.RoutingPolicy;
 import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
+import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcessBatch;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The evaluation model for evaluating individuals in GPHH.
+ * Optionally, the simulations are terminated early, the fitnesses of the duplicated individuals are cached,
+ * the samples of an individual are simulated in parallel or in lockstep, and the next seed rotation is
+ * precomputed in the background (see the corresponding fields).
  */
 
 public abstract class EvaluationModel {
@@ -38,11 +49,99 @@ public abstract class EvaluationModel {
     public static final String P_COST_ULEVEL = "cost-uncertainty-level";
     public static final String P_VEHICLES = "vehicles"; // nubmer of vehicles
     public static final String P_SEED = "seed"; // the seed for the first instance
+    public static final String P_EARLY_TERMINATION = "early-termination";
+    public static final String P_CUTOFF_QUANTILE = "cutoff-quantile";
+    public static final String P_CUTOFF_MIN_EVALUATIONS = "cutoff-min-evaluations";
+    public static final String P_FITNESS_CACHE = "fitness-cache";
+    public static final String P_FITNESS_CACHE_CAPACITY = "fitness-cache-capacity";
+    public static final String P_PARALLEL_SAMPLES = "parallel-samples";
+    public static final String P_PARALLEL_THREADS = "parallel-threads";
+    public static final String P_LOCKSTEP_SAMPLES = "lockstep-samples";
+    public static final String P_LOCKSTEP_WIDTH = "lockstep-width";
+    public static final String P_PRECOMPUTE_ROTATION = "precompute-rotation";
 
     protected List<Objective> objectives;
     protected List<InstanceSamples> instanceSamples; // the instance samples used for evaluation
     protected Map<Pair<Integer, Objective>, Double> objRefValueMap;
 
+    /**
+     * Whether to terminate the simulations early. The fitnesses evaluated with the current seeds are recorded,
+     * and their quantile (cutoff-quantile) is used as the cutoff of the next evaluations. An individual whose
+     * fitness lower bound exceeds the cutoff stops being simulated, and gets the lower bound as its penalty
+     * fitness. It is still worse than all the individuals better than the cutoff.
+     * The early termination is applied to a single objective only.
+     */
+    protected boolean earlyTermination;
+    protected double cutoffQuantile; // the quantile of the evaluated fitnesses as the cutoff
+    protected int cutoffMinEvaluations; // the minimal number of evaluated fitnesses to have a cutoff
+    private List<Double> evaluatedFitnesses; // sorted, evaluated with the current seeds
+
+    /**
+     * Whether to cache the fitnesses by the canonical forms of the individuals and the seed epoch.
+     * A duplicated individual (e.g. a reproduced or an elite individual, or a crossover clone) evaluated with
+     * the same seeds gets the cached fitness instead of being simulated again.
+     * The cache is cleared when the seeds are rotated, or once it reaches its capacity.
+     */
+    protected boolean fitnessCache;
+    protected int fitnessCacheCapacity;
+    private Map<Pair<String, Integer>, double[]> cachedFitnesses; // keyed by canonical form and seed epoch
+    private int seedEpoch; // the number of seed rotations so far
+    private long numCacheLookups; // since the last report
+    private long numCacheHits;
+
+    // the reusable reactive decision processes of each thread, on the thread's clones of the base instances
+    private ThreadLocal<Map<Instance, ReactiveDecisionProcess>> reactiveDecisionProcesses;
+
+    /**
+     * Whether to simulate the samples of an individual in parallel, by a fork-join pool of parallel-threads
+     * workers (the number of processors by default), independently of the evaluation threads of ECJ.
+     * The objective values are reduced in the sequential order of the samples, so the fitness is
+     * identical to the sequential evaluation.
+     */
+    protected boolean parallelSamples;
+    private ForkJoinPool samplePool; // the workers to simulate the samples in parallel
+
+    /**
+     * Whether to simulate the samples of an individual in lockstep by the evaluation thread, in batches of
+     * lockstep-width consecutive samples: the decisions of all the samples of a batch at each step are made
+     * together, and the priorities of their candidates are calculated in a single batch. A wider batch packs
+     * more candidates together, but the states of more samples compete for the cache at the same time.
+     * Each sample has its own decision process on its own clone of the base instance, reused by the thread.
+     * The samples cannot be simulated both in lockstep and in parallel.
+     */
+    protected boolean lockstepSamples;
+    protected int lockstepWidth; // the maximal number of samples run in lockstep
+    // the batches of the decision processes of all the samples of each thread, each run in lockstep
+    private ThreadLocal<List<ReactiveDecisionProcessBatch>> lockstepBatches;
+
+    /**
+     * Whether to precompute the next seed rotation on a background thread while the individuals are evaluated
+     * with the current seeds: the rotated seeds, the realisations of the instances sampled by them, and the
+     * objective reference values on them. The realisations are immutable, and copied into the thread's clone
+     * of an instance instead of sampling the clone by the seed.
+     */
+    protected boolean precomputeRotation;
+    private Future<SeedRotation> nextRotation; // precomputed by its own daemon thread
+    // the realisations of the base instances by the current seeds, if precomputed
+    private volatile Map<Pair<Instance, Long>, Instance.Realisation> realisations;
+
+    /**
+     * The seeds, the realisations and the objective reference values of a seed rotation.
+     */
+    private static class SeedRotation {
+        private final List<List<Long>> seeds; // the seeds of each instance
+        private final Map<Pair<Instance, Long>, Instance.Realisation> realisations;
+        private final Map<Pair<Integer, Objective>, Double> objRefValueMap;
+
+        private SeedRotation(List<List<Long>> seeds,
+                             Map<Pair<Instance, Long>, Instance.Realisation> realisations,
+                             Map<Pair<Integer, Objective>, Double> objRefValueMap) {
+            this.seeds = seeds;
+            this.realisations = realisations;
+            this.objRefValueMap = objRefValueMap;
+        }
+    }
+
     public List<Objective> getObjectives() {
         return objectives;
     }
@@ -51,6 +150,26 @@ public abstract class EvaluationModel {
         return instanceSamples;
     }
 
+    public boolean isEarlyTermination() {
+        return earlyTermination;
+    }
+
+    public boolean isFitnessCache() {
+        return fitnessCache;
+    }
+
+    /**
+     * The number of samples over all the instances.
+     * @return the number of samples.
+     */
+    public int numSamples() {
+        int numSamples = 0;
+        for (InstanceSamples iSamples : instanceSamples)
+            numSamples += iSamples.getSeeds().size();
+
+        return numSamples;
+    }
+
     /**
      * Get the objective reference value of a particular decision process and an objective.
      * @param index the index of the decision process.
@@ -146,50 +265,529 @@ public abstract class EvaluationModel {
             instanceSamples.add(iSamples);
         }
 
-        // calculate the initial objective reference values
-        objRefValueMap = new HashMap<>();
+        // the early termination
+        p = base.push(P_EARLY_TERMINATION);
+        earlyTermination = state.parameters.getBoolean(p, null, false);
+        p = base.push(P_CUTOFF_QUANTILE);
+        cutoffQuantile = state.parameters.getDoubleWithDefault(p, null, 0.5);
+        p = base.push(P_CUTOFF_MIN_EVALUATIONS);
+        cutoffMinEvaluations = state.parameters.getIntWithDefault(p, null, 10);
+
+        if (cutoffQuantile < 0 || cutoffQuantile > 1) {
+            System.err.println("ERROR:");
+            System.err.println("The cutoff quantile must be within [0, 1].");
+            System.exit(1);
+        }
+
+        evaluatedFitnesses = new ArrayList<>();
+
+        // the fitness cache
+        p = base.push(P_FITNESS_CACHE);
+        fitnessCache = state.parameters.getBoolean(p, null, false);
+        p = base.push(P_FITNESS_CACHE_CAPACITY);
+        fitnessCacheCapacity = state.parameters.getIntWithDefault(p, null, 100000);
+
+        cachedFitnesses = new HashMap<>();
+        seedEpoch = 0;
+
+        // the reusable decision processes of the instances, created by each thread on demand
+        reactiveDecisionProcesses = ThreadLocal.withInitial(IdentityHashMap::new);
+
+        // the parallel simulation of the samples
+        p = base.push(P_PARALLEL_SAMPLES);
+        parallelSamples = state.parameters.getBoolean(p, null, false);
+        p = base.push(P_PARALLEL_THREADS);
+        int parallelThreads = state.parameters.getIntWithDefault(p, null,
+                Runtime.getRuntime().availableProcessors());
+
+        if (parallelSamples) {
+            if (parallelThreads < 1) {
+                System.err.println("ERROR:");
+                System.err.println("The number of parallel threads must be positive.");
+                System.exit(1);
+            }
+
+            samplePool = new ForkJoinPool(parallelThreads);
+        }
+
+        // the lockstep simulation of the samples
+        p = base.push(P_LOCKSTEP_SAMPLES);
+        lockstepSamples = state.parameters.getBoolean(p, null, false);
+        p = base.push(P_LOCKSTEP_WIDTH);
+        lockstepWidth = state.parameters.getIntWithDefault(p, null, 5);
+
+        if (lockstepSamples && parallelSamples) {
+            System.err.println("ERROR:");
+            System.err.println("The samples cannot be simulated both in lockstep and in parallel.");
+            System.exit(1);
+        }
+
+        if (lockstepWidth < 1) {
+            System.err.println("ERROR:");
+            System.err.println("The lockstep width must be positive.");
+            System.exit(1);
+        }
+
+        lockstepBatches = ThreadLocal.withInitial(ArrayList::new);
+
+        // the precomputation of the next rotation
+        p = base.push(P_PRECOMPUTE_ROTATION);
+        precomputeRotation = state.parameters.getBoolean(p, null, false);
+
+        // calculate the initial objective reference values, and the initial realisations if precomputed
         calcObjRefValueMap();
+
+        if (precomputeRotation)
+            precomputeNextRotation();
     }
 
     /**
      * Rotate the seeds of the instances.
      * For each instance, the seed is incremented by SEED_GAP_ROTATION.
+     * If the rotation has been precomputed, the precomputed seeds and objective reference values
+     * are swapped in (waiting for the precomputation to finish if needed), and the next rotation is precomputed.
      */
     public void rotateSeeds() {
+        if (precomputeRotation) {
+            SeedRotation rotation = null;
+            try {
+                rotation = nextRotation.get();
+            } catch (InterruptedException | ExecutionException e) {
+                System.err.println("ERROR:");
+                System.err.println("Unable to precompute the seed rotation: " + e);
+                System.exit(1);
+            }
+
+            for (int i = 0; i < instanceSamples.size(); i++) {
+                List<Long> seeds = rotation.seeds.get(i);
+                for (int j = 0; j < seeds.size(); j++)
+                    instanceSamples.get(i).setSeed(j, seeds.get(j));
+            }
+
+            realisations = rotation.realisations;
+            objRefValueMap = rotation.objRefValueMap;
+
+            precomputeNextRotation();
+        }
+        else {
+            for (InstanceSamples iSamples : instanceSamples) {
+                for (int i = 0; i < iSamples.getSeeds().size(); i++) {
+                    long seed = iSamples.getSeed(i);
+                    iSamples.setSeed(i, seed + SEED_GAP_ROTATION);
+                }
+            }
+
+            // recalculate the objective reference values after rotation
+            calcObjRefValueMap();
+        }
+
+        // the fitnesses evaluated with the old seeds are no longer comparable
+        synchronized (this) {
+            evaluatedFitnesses.clear();
+            cachedFitnesses.clear();
+            seedEpoch ++;
+        }
+    }
+
+    /**
+     * Start precomputing the next rotation on a background thread, i.e. the rotated seeds,
+     * the realisations of the instances sampled by them and the objective reference values on them.
+     */
+    private void precomputeNextRotation() {
+        // the seeds are rotated here, as they are not changed until the next rotation is swapped in
+        List<List<Long>> seeds = new ArrayList<>();
+        for (InstanceSamples iSamples : instanceSamples) {
+            List<Long> rotated = new ArrayList<>();
+            for (long seed : iSamples.getSeeds())
+                rotated.add(seed + SEED_GAP_ROTATION);
+
+            seeds.add(rotated);
+        }
+
+        FutureTask<SeedRotation> task = new FutureTask<>(() -> {
+            Map<Pair<Instance, Long>, Instance.Realisation> nextRealisations = new HashMap<>();
+            Map<Pair<Integer, Objective>, Double> nextObjRefValueMap = objRefValueMap(seeds, nextRealisations);
+
+            return new SeedRotation(seeds, nextRealisations, nextObjRefValueMap);
+        });
+
+        // a thread for each rotation, which ends with the precomputation, so nothing is left to shut down
+        Thread thread = new Thread(task, "Seed rotation precomputer");
+        thread.setDaemon(true);
+        thread.start();
+
+        nextRotation = task;
+    }
+
+    /**
+     * The seed epoch, i.e. the number of seed rotations so far.
+     * @return the seed epoch.
+     */
+    public int getSeedEpoch() {
+        return seedEpoch;
+    }
+
+    /**
+     * Rotate the seeds until the seed epoch is reached, e.g. for a slave
+     * to follow the seed rotations of the master. The seeds cannot be rotated backwards.
+     * @param epoch the seed epoch to be reached.
+     */
+    public void setSeedEpoch(int epoch) {
+        if (epoch < seedEpoch) {
+            System.err.println("ERROR:");
+            System.err.println("Cannot rotate the seeds from epoch " + seedEpoch + " back to epoch " + epoch + ".");
+            System.exit(1);
+        }
+
+        while (seedEpoch < epoch)
+            rotateSeeds();
+    }
+
+    /**
+     * The cutoff of the fitness for the early termination, i.e. the quantile of
+     * the fitnesses evaluated with the current seeds.
+     * @return the cutoff, or positive infinity if there is no cutoff.
+     */
+    protected synchronized double cutoff() {
+        if (!earlyTermination || objectives.size() > 1
+                || evaluatedFitnesses.size() < cutoffMinEvaluations)
+            return Double.POSITIVE_INFINITY;
+
+        int index = (int)Math.ceil(cutoffQuantile * evaluatedFitnesses.size()) - 1;
+        if (index < 0)
+            index = 0;
+
+        return evaluatedFitnesses.get(index);
+    }
+
+    /**
+     * Record a fitness evaluated with the current seeds for the cutoff.
+     * @param fitness the fitness.
+     */
+    protected synchronized void recordEvaluatedFitness(double fitness) {
+        if (!earlyTermination)
+            return;
+
+        int index = Collections.binarySearch(evaluatedFitnesses, fitness);
+        if (index < 0)
+            index = -index - 1;
+
+        evaluatedFitnesses.add(index, fitness);
+    }
+
+    /**
+     * Get a reactive decision process of the base instance, the seed and the routing policy.
+     * The decision process is reused by the current thread: it is created for the first time
+     * on the thread's clone of the base instance, so that the threads do not share the sampled instances,
+     * and reset with the seed and routing policy afterwards. It has no cutoff.
+     * @param baseInstance the base instance.
+     * @param seed the seed to sample the random variables.
+     * @param policy the routing policy.
+     * @param costOnly whether the decision process is cost-only.
+     * @return the reactive decision process ready to run.
+     */
+    protected ReactiveDecisionProcess reactiveDecisionProcess(Instance baseInstance,
+                                                              long seed,
+                                                              RoutingPolicy policy,
+                                                              boolean costOnly) {
+        Map<Instance, ReactiveDecisionProcess> dps = reactiveDecisionProcesses.get();
+        ReactiveDecisionProcess dp = dps.get(baseInstance);
+
+        if (dp == null) {
+            dp = DecisionProcess.initReactive(baseInstance.clone(), seed, policy);
+            dp.setCostOnly(costOnly);
+            dps.put(baseInstance, dp);
+        }
+        else {
+            dp.setCostOnly(costOnly);
+            dp.reset(seed, policy);
+        }
+        dp.removeCutoff();
+        useRealisation(dp, baseInstance, seed);
+
+        return dp;
+    }
+
+    /**
+     * Set the precomputed realisation of the base instance and the seed, if any,
+     * to the instance of a decision process, so that it is not sampled again by the seed.
+     * @param dp the decision process.
+     * @param baseInstance the base instance.
+     * @param seed the seed.
+     */
+    private void useRealisation(ReactiveDecisionProcess dp, Instance baseInstance, long seed) {
+        Map<Pair<Instance, Long>, Instance.Realisation> current = realisations;
+        if (current == null)
+            return;
+
+        Instance.Realisation realisation = current.get(Pair.of(baseInstance, seed));
+        if (realisation != null)
+            dp.getState().getInstance().setRealisation(realisation);
+    }
+
+    /**
+     * Simulate a routing policy on a sample by the current thread.
+     * @param policy the routing policy.
+     * @param index the index of the sample, in the order of the instances and seeds.
+     * @param costOnly whether the decision process is cost-only.
+     * @return the objective values of the sample.
+     */
+    public double[] simulateSample(RoutingPolicy policy, int index, boolean costOnly) {
+        InstanceSamples sampleOf = null;
         for (InstanceSamples iSamples : instanceSamples) {
-            for (int i = 0; i < iSamples.getSeeds().size(); i++) {
-                long seed = iSamples.getSeed(i);
-                iSamples.setSeed(i, seed + SEED_GAP_ROTATION);
+            if (index < iSamples.getSeeds().size()) {
+                sampleOf = iSamples;
+                break;
             }
+
+            index -= iSamples.getSeeds().size();
         }
 
-        // recalculate the objective reference values after rotation
-        calcObjRefValueMap();
+        ReactiveDecisionProcess dp = reactiveDecisionProcess(sampleOf.getBaseInstance(),
+                sampleOf.getSeed(index), policy, costOnly);
+
+        dp.run();
+
+        return objValues(dp);
     }
 
     /**
-     * Calculate the objective reference values.
+     * The objective values of the solution of a decision process that has been run.
+     * @param dp the decision process.
+     * @return the objective values.
      */
-    public void calcObjRefValueMap() {
+    private double[] objValues(DecisionProcess dp) {
+        Solution<NodeSeqRoute> solution = dp.getState().getSolution();
+        double[] objValues = new double[objectives.size()];
+        for (int j = 0; j < objValues.length; j++)
+            objValues[j] = solution.objValue(objectives.get(j));
+
+        return objValues;
+    }
+
+    /**
+     * Simulate a routing policy on all the samples in lockstep by the current thread,
+     * in batches of consecutive samples. The decision processes of the samples are created
+     * on the first call of the thread, each on its own clone of the base instance,
+     * and reset with the seeds and the policy afterwards.
+     * @param policy the routing policy.
+     * @param costOnly whether the decision processes are cost-only.
+     * @return the objective values of each sample, in the sequential order of the instances and seeds.
+     */
+    protected double[][] simulateSamplesInLockstep(RoutingPolicy policy, boolean costOnly) {
+        List<ReactiveDecisionProcessBatch> batches = lockstepBatches.get();
+
         int index = 0;
         for (InstanceSamples iSamples : instanceSamples) {
             for (long seed : iSamples.getSeeds()) {
-                // create a new reactive decision process from the based intance and the seed.
+                if (index / lockstepWidth == batches.size())
+                    batches.add(new ReactiveDecisionProcessBatch());
+
+                List<ReactiveDecisionProcess> dps = batches.get(index / lockstepWidth).getDecisionProcesses();
+                ReactiveDecisionProcess dp;
+
+                if (index % lockstepWidth == dps.size()) {
+                    dp = DecisionProcess.initReactive(iSamples.getBaseInstance().clone(), seed, policy);
+                    dp.setCostOnly(costOnly);
+                    dps.add(dp);
+                }
+                else {
+                    dp = dps.get(index % lockstepWidth);
+                    dp.setCostOnly(costOnly);
+                    dp.reset(seed, policy);
+                }
+                dp.removeCutoff();
+                useRealisation(dp, iSamples.getBaseInstance(), seed);
+
+                index ++;
+            }
+        }
+
+        double[][] objValues = new double[index][];
+        index = 0;
+        for (ReactiveDecisionProcessBatch batch : batches) {
+            batch.setRoutingPolicy(policy);
+            batch.run();
+
+            for (ReactiveDecisionProcess dp : batch.getDecisionProcesses())
+                objValues[index++] = objValues(dp);
+        }
+
+        return objValues;
+    }
+
+    /**
+     * Simulate a routing policy on all the samples in parallel by the sample pool.
+     * @param policy the routing policy.
+     * @param costOnly whether the decision processes are cost-only.
+     * @return the objective values of each sample, in the sequential order of the instances and seeds.
+     */
+    protected double[][] simulateSamplesInParallel(RoutingPolicy policy, boolean costOnly) {
+        // the policy is shared by the workers
+        policy.prepare();
+
+        double[][] objValues = new double[numSamples()][];
+        samplePool.invoke(new SampleSimulation(policy, costOnly, objValues, 0, objValues.length));
+
+        return objValues;
+    }
+
+    /**
+     * The simulation of a range of samples, split in halves until a single sample is left.
+     */
+    private class SampleSimulation extends RecursiveAction {
+        private final RoutingPolicy policy;
+        private final boolean costOnly;
+        private final double[][] objValues;
+        private final int from; // inclusive
+        private final int to; // exclusive
+
+        private SampleSimulation(RoutingPolicy policy, boolean costOnly,
+                                 double[][] objValues, int from, int to) {
+            this.policy = policy;
+            this.costOnly = costOnly;
+            this.objValues = objValues;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SampleSimulation(policy, costOnly, objValues, from, mid),
+                        new SampleSimulation(policy, costOnly, objValues, mid, to));
+                return;
+            }
+
+            if (to == from)
+                return;
+
+            objValues[from] = simulateSample(policy, from, costOnly);
+        }
+    }
+
+    /**
+     * Calculate the objective reference values.
+     */
+    public void calcObjRefValueMap() {
+        List<List<Long>> seeds = new ArrayList<>();
+        for (InstanceSamples iSamples : instanceSamples)
+            seeds.add(iSamples.getSeeds());
+
+        if (precomputeRotation) {
+            Map<Pair<Instance, Long>, Instance.Realisation> currentRealisations = new HashMap<>();
+            objRefValueMap = objRefValueMap(seeds, currentRealisations);
+            realisations = currentRealisations;
+        }
+        else {
+            objRefValueMap = objRefValueMap(seeds, null);
+        }
+    }
+
+    /**
+     * Calculate the objective reference values on the given seeds of the instances,
+     * by the decision processes of the current thread.
+     * @param seeds the seeds of each instance.
+     * @param realisations the map to collect the realisations of the instances sampled by the seeds
+     *                     -- null if not collected.
+     * @return the objective reference values.
+     */
+    private Map<Pair<Integer, Objective>, Double> objRefValueMap(List<List<Long>> seeds,
+            Map<Pair<Instance, Long>, Instance.Realisation> realisations) {
+        Map<Pair<Integer, Objective>, Double> objRefValueMap = new HashMap<>();
+
+        int index = 0;
+        for (int i = 0; i < instanceSamples.size(); i++) {
+            InstanceSamples iSamples = instanceSamples.get(i);
+            for (long seed : seeds.get(i)) {
+                // get the reactive decision process from the based intance and the seed.
                 ReactiveDecisionProcess dp =
-                        DecisionProcess.initReactive(iSamples.getBaseInstance(),
-                                seed, Objective.refReactiveRoutingPolicy());
+                        reactiveDecisionProcess(iSamples.getBaseInstance(),
+                                seed, Objective.refReactiveRoutingPolicy(), true);
 
                 // get the objective reference values by applying the reference routing policy.
                 dp.run();
+
+                // the instance of the process has been sampled by the seed
+                if (realisations != null && !iSamples.getBaseInstance().isExpectedValue())
+                    realisations.put(Pair.of(iSamples.getBaseInstance(), seed),
+                            dp.getState().getInstance().realisation());
+
                 Solution<NodeSeqRoute> solution = dp.getState().getSolution();
                 for (Objective objective : objectives) {
                     double objValue = solution.objValue(objective);
                     objRefValueMap.put(Pair.of(index, objective), objValue);
                     index ++;
                 }
-                dp.reset();
             }
         }
+
+        return objRefValueMap;
+    }
+
+    /**
+     * Evaluate an individual with the fitness cache. If an individual of the same canonical form
+     * has been evaluated with the current seeds, it gets the cached fitness.
+     * Otherwise, it is evaluated by this evaluation model, and its fitness is cached.
+     * @param canonicalForm the canonical form of the individual -- null if it cannot be cached.
+     * @param policy the policy to be evaluated.
+     * @param plan the plan to be evaluated -- null if the policy is reactive.
+     * @param fitness the fitness of the individual.
+     * @param state the evolution state.
+     */
+    public void evaluate(String canonicalForm, RoutingPolicy policy, Solution<TaskSeqRoute> plan,
+                         Fitness fitness, EvolutionState state) {
+        if (!fitnessCache || canonicalForm == null) {
+            evaluate(policy, plan, fitness, state);
+            return;
+        }
+
+        Pair<String, Integer> key;
+        double[] cached;
+        synchronized (this) {
+            key = Pair.of(canonicalForm, seedEpoch);
+            cached = cachedFitnesses.get(key);
+
+            numCacheLookups ++;
+            if (cached != null)
+                numCacheHits ++;
+        }
+
+        MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+
+        if (cached != null) {
+            f.setObjectives(state, cached.clone());
+            return;
+        }
+
+        evaluate(policy, plan, fitness, state);
+
+        synchronized (this) {
+            // the seeds may have been rotated during the evaluation
+            if (key.getRight() == seedEpoch) {
+                if (cachedFitnesses.size() >= fitnessCacheCapacity)
+                    cachedFitnesses.clear();
+
+                cachedFitnesses.put(key, f.getObjectives().clone());
+            }
+        }
+    }
+
+    /**
+     * Report the statistics of the evaluations since the last report, e.g. once per generation.
+     * By default, the hit rate of the fitness cache is reported.
+     * @param state the evolution state.
+     */
+    public synchronized void reportStatistics(EvolutionState state) {
+        if (numCacheLookups == 0)
+            return;
+
+        state.output.message("Fitness cache: " + numCacheHits + " of " + numCacheLookups +
+                " evaluations hit (" + (100.0 * numCacheHits / numCacheLookups) + "%).");
+
+        numCacheLookups = 0;
+        numCacheHits = 0;
     }
 
     /**
@@ -0,0 +1,198 @@
+package gphhucarp.gp.evaluation;
+
+import ec.EvolutionState;
+import ec.Fitness;
+import ec.multiobjective.MultiObjectiveFitness;
+import ec.util.Parameter;
+import gphhucarp.core.Instance;
+import gphhucarp.core.InstanceSamples;
+import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
+import gphhucarp.gp.GPHHEvolutionState;
+import gphhucarp.representation.Solution;
+import gphhucarp.representation.route.NodeSeqRoute;
+import gphhucarp.representation.route.TaskSeqRoute;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A multi-fidelity evaluation model is a reactive evaluation model with a low-fidelity proxy.
+ * The proxy is a deterministic simulation on the expected-value instance of each base instance,
+ * i.e. the demands and deadheading costs are their expected values. There is no sampling and
+ * no failure, and the distances of the expected-value instances are only calculated once.
+ *
+ * The fidelity levels are defined by the generations they start from and their promotion ratios.
+ * At each level, all the offspring are evaluated by the proxy first, and only the best
+ * fraction (the promotion ratio) is promoted to the full evaluation on the samples
+ * (see MultiFidelityEvaluator). The fidelity rises over generations with the promotion ratio.
+ * For example,
+ *  fidelity-levels = 3
+ *  fidelity-level.0.generation = 0
+ *  fidelity-level.0.promotion-ratio = 0.25
+ *  fidelity-level.1.generation = 20
+ *  fidelity-level.1.promotion-ratio = 0.5
+ *  fidelity-level.2.generation = 40
+ *  fidelity-level.2.promotion-ratio = 1
+ * By default, there is a single level with promotion ratio 1, i.e. all the offspring are fully evaluated.
+ */
+
+public class MultiFidelityEvaluationModel extends ReactiveEvaluationModel {
+
+    public static final String P_FIDELITY_LEVELS = "fidelity-levels";
+    public static final String P_FIDELITY_LEVEL = "fidelity-level";
+    public static final String P_GENERATION = "generation";
+    public static final String P_PROMOTION_RATIO = "promotion-ratio";
+
+    protected int[] levelGenerations; // the generation that each level starts from
+    protected double[] promotionRatios;
+    protected List<Instance> proxyInstances; // the expected-value instances
+
+    // the evaluation counts of each level since the last report
+    private long[] numProxyEvaluations;
+    private long[] numFullEvaluations;
+
+    @Override
+    public void setup(final EvolutionState state, final Parameter base) {
+        super.setup(state, base);
+
+        if (objectives.size() > 1) {
+            System.err.println("ERROR:");
+            System.err.println("The multi-fidelity evaluation only supports a single objective.");
+            System.exit(1);
+        }
+
+        Parameter p = base.push(P_FIDELITY_LEVELS);
+        int numLevels = state.parameters.getIntWithDefault(p, null, 1);
+
+        levelGenerations = new int[numLevels];
+        promotionRatios = new double[numLevels];
+        for (int i = 0; i < numLevels; i++) {
+            Parameter b = base.push(P_FIDELITY_LEVEL).push("" + i);
+            p = b.push(P_GENERATION);
+            levelGenerations[i] = state.parameters.getIntWithDefault(p, null, 0);
+            p = b.push(P_PROMOTION_RATIO);
+            promotionRatios[i] = state.parameters.getDoubleWithDefault(p, null, 1.0);
+
+            if (promotionRatios[i] <= 0 || promotionRatios[i] > 1) {
+                System.err.println("ERROR:");
+                System.err.println("The promotion ratio must be within (0, 1].");
+                System.exit(1);
+            }
+
+            if (i > 0 && levelGenerations[i] < levelGenerations[i-1]) {
+                System.err.println("ERROR:");
+                System.err.println("The fidelity levels must be in the increasing order of generation.");
+                System.exit(1);
+            }
+        }
+
+        proxyInstances = new ArrayList<>();
+        for (InstanceSamples iSamples : instanceSamples) {
+            Instance proxyInstance = iSamples.getBaseInstance().clone();
+            proxyInstance.setExpectedValue(true);
+            proxyInstances.add(proxyInstance);
+        }
+
+        numProxyEvaluations = new long[numLevels];
+        numFullEvaluations = new long[numLevels];
+    }
+
+    /**
+     * The fidelity level of a generation.
+     * @param generation the generation.
+     * @return the fidelity level.
+     */
+    public int fidelityLevel(int generation) {
+        int level = 0;
+        while (level < levelGenerations.length - 1 && levelGenerations[level+1] <= generation)
+            level ++;
+
+        return level;
+    }
+
+    /**
+     * The promotion ratio of a generation, i.e. the fraction of the offspring
+     * promoted from the proxy to the full evaluation.
+     * @param generation the generation.
+     * @return the promotion ratio.
+     */
+    public double promotionRatio(int generation) {
+        return promotionRatios[fidelityLevel(generation)];
+    }
+
+    /**
+     * Evaluate an individual by the proxy, i.e. the average objective values of the
+     * deterministic simulations on the expected-value instances.
+     * @param policy the policy to be evaluated.
+     * @param fitness the proxy fitness of the individual.
+     * @param state the evolution state.
+     */
+    public void evaluateProxy(RoutingPolicy policy, Fitness fitness, EvolutionState state) {
+        double[] fitnesses = new double[objectives.size()];
+
+        for (Instance proxyInstance : proxyInstances) {
+            // the seed makes no difference for the expected-value instance
+            ReactiveDecisionProcess dp =
+                    reactiveDecisionProcess(proxyInstance, 0, policy, true);
+
+            dp.run();
+            Solution<NodeSeqRoute> solution = dp.getState().getSolution();
+            for (int j = 0; j < fitnesses.length; j++)
+                fitnesses[j] += solution.objValue(objectives.get(j));
+        }
+
+        for (int j = 0; j < fitnesses.length; j++)
+            fitnesses[j] /= proxyInstances.size();
+
+        recordEvaluation(fidelityLevel(evaluatedGeneration(state)), true);
+
+        MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+        f.setObjectives(state, fitnesses);
+    }
+
+    @Override
+    public void evaluate(RoutingPolicy policy, Solution<TaskSeqRoute> plan,
+                         Fitness fitness, EvolutionState state) {
+        super.evaluate(policy, plan, fitness, state);
+
+        recordEvaluation(fidelityLevel(evaluatedGeneration(state)), false);
+    }
+
+    /**
+     * The generation of the individuals being evaluated, which is ahead of the current generation
+     * when the offspring are evaluated while they are bred (see PipelinedGPHHEvolutionState).
+     * @param state the evolution state.
+     * @return the generation being evaluated.
+     */
+    private int evaluatedGeneration(EvolutionState state) {
+        if (state instanceof GPHHEvolutionState)
+            return ((GPHHEvolutionState)state).evaluatedGeneration();
+
+        return state.generation;
+    }
+
+    private synchronized void recordEvaluation(int level, boolean proxy) {
+        if (proxy)
+            numProxyEvaluations[level] ++;
+        else
+            numFullEvaluations[level] ++;
+    }
+
+    @Override
+    public synchronized void reportStatistics(EvolutionState state) {
+        super.reportStatistics(state);
+
+        for (int i = 0; i < promotionRatios.length; i++) {
+            if (numProxyEvaluations[i] == 0 && numFullEvaluations[i] == 0)
+                continue;
+
+            state.output.message("Fidelity level " + i + " (promotion ratio " + promotionRatios[i] +
+                    "): " + numProxyEvaluations[i] + " proxy evaluations, " +
+                    numFullEvaluations[i] + " full evaluations.");
+
+            numProxyEvaluations[i] = 0;
+            numFullEvaluations[i] = 0;
+        }
+    }
+}
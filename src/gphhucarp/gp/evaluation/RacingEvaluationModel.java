@@ -0,0 +1,301 @@
+package gphhucarp.gp.evaluation;
+
+import ec.EvolutionState;
+import ec.Fitness;
+import ec.multiobjective.MultiObjectiveFitness;
+import ec.util.Parameter;
+import gphhucarp.core.InstanceSamples;
+import gphhucarp.core.Objective;
+import gphhucarp.decisionprocess.RoutingPolicy;
+import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
+import gphhucarp.representation.Solution;
+import gphhucarp.representation.route.NodeSeqRoute;
+import gphhucarp.representation.route.TaskSeqRoute;
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * A racing evaluation model is a reactive evaluation model that stops evaluating
+ * an individual once it is statistically worse than the best individual so far.
+ *
+ * The samples are simulated in the same order for all the individuals.
+ * After each sample from racing-min-samples on, the paired differences between the objective values
+ * of the individual and the best individual on the samples so far give a one-sided confidence interval
+ * of the mean difference, by either
+ *  - paired-t: the paired t-test, or
+ *  - hoeffding: the Hoeffding bound, with the range of the differences given by racing-range.
+ *    Without racing-range, the range of the differences observed so far is used instead,
+ *    which is a heuristic without the guarantee of the Hoeffding bound.
+ * An individual is tested at most once per remaining sample, so racing-alpha is split evenly
+ * over these tests (Bonferroni), and the probability to wrongly stop an individual is at most racing-alpha.
+ * If the lower bound of the interval is positive, the individual is dominated. It is not simulated on
+ * the remaining samples, and gets the pessimistic fitness of the best mean plus the upper bound of the interval,
+ * or its mean on the samples simulated if larger. So it is not ranked above a contender by the racing.
+ * The other individuals are simulated on all the samples, and the best one becomes the new reference.
+ * The individuals carried over from the previous generation (e.g. the elites) are simulated
+ * on all the samples without racing (see ReactiveGPHHProblem).
+ *
+ * The best individual is forgotten when the seeds are rotated. Racing is applied to a single
+ * objective only, otherwise all the samples are simulated.
+ */
+
+public class RacingEvaluationModel extends ReactiveEvaluationModel {
+
+    public static final String P_RACING_METHOD = "racing-method";
+    public static final String P_RACING_ALPHA = "racing-alpha";
+    public static final String P_RACING_MIN_SAMPLES = "racing-min-samples";
+    public static final String P_RACING_RANGE = "racing-range";
+
+    public static final String RACING_PAIRED_T = "paired-t";
+    public static final String RACING_HOEFFDING = "hoeffding";
+
+    protected String racingMethod;
+    protected double racingAlpha;
+    protected int racingMinSamples;
+    protected double racingRange; // the range of the differences for hoeffding, 0 for the observed range
+    private double testAlpha; // the significance level of each test
+    private double[] tQuantiles; // the t quantiles of 1 - testAlpha for each number of samples
+
+    private double[] bestObjValues; // the objective values of the best individual on the samples
+    private double bestMean;
+
+    // the statistics of the racing since the last report
+    private long numEvaluations;
+    private long numDominated;
+    private long numSimulations;
+    private long numFullSimulations;
+
+    @Override
+    public void setup(final EvolutionState state, final Parameter base) {
+        super.setup(state, base);
+
+        Parameter p = base.push(P_RACING_METHOD);
+        racingMethod = state.parameters.getStringWithDefault(p, null, RACING_PAIRED_T);
+        p = base.push(P_RACING_ALPHA);
+        racingAlpha = state.parameters.getDoubleWithDefault(p, null, 0.05);
+        p = base.push(P_RACING_MIN_SAMPLES);
+        racingMinSamples = state.parameters.getIntWithDefault(p, null, 3);
+        p = base.push(P_RACING_RANGE);
+        racingRange = state.parameters.getDoubleWithDefault(p, null, 0);
+
+        if (!racingMethod.equals(RACING_PAIRED_T) && !racingMethod.equals(RACING_HOEFFDING)) {
+            System.err.println("Unknown racing method: " + racingMethod);
+            System.exit(1);
+        }
+
+        if (racingAlpha <= 0 || racingAlpha >= 1) {
+            System.err.println("ERROR:");
+            System.err.println("The racing alpha must be within (0, 1).");
+            System.exit(1);
+        }
+
+        if (racingRange < 0) {
+            System.err.println("ERROR:");
+            System.err.println("The racing range must be non-negative.");
+            System.exit(1);
+        }
+
+        // at least two samples are needed for the variance of the paired t-test
+        if (racingMinSamples < 2)
+            racingMinSamples = 2;
+
+        int numSamples = 0;
+        for (InstanceSamples iSamples : instanceSamples)
+            numSamples += iSamples.getSeeds().size();
+
+        // an individual is tested after each sample from racing-min-samples on, except the last
+        int numTests = Math.max(numSamples - racingMinSamples, 1);
+        testAlpha = racingAlpha / numTests;
+
+        tQuantiles = new double[numSamples + 1];
+        for (int n = 2; n <= numSamples; n++)
+            tQuantiles[n] = new TDistribution(null, n - 1).inverseCumulativeProbability(1 - testAlpha);
+    }
+
+    @Override
+    public void rotateSeeds() {
+        super.rotateSeeds();
+
+        // the best individual was evaluated with the old seeds
+        synchronized (this) {
+            bestObjValues = null;
+        }
+    }
+
+    @Override
+    public void evaluate(RoutingPolicy policy, Solution<TaskSeqRoute> plan,
+                         Fitness fitness, EvolutionState state) {
+        double[] best;
+        double currBestMean;
+        synchronized (this) {
+            best = bestObjValues;
+            currBestMean = bestMean;
+        }
+
+        if (objectives.size() > 1 || best == null) {
+            evaluateFully(policy, fitness, state);
+            return;
+        }
+
+        Objective objective = objectives.get(0);
+        double[] objValues = new double[best.length];
+        double sumDiff = 0;
+        double sumSqDiff = 0;
+        double minDiff = Double.POSITIVE_INFINITY;
+        double maxDiff = Double.NEGATIVE_INFINITY;
+
+        int n = 0;
+        for (InstanceSamples iSamples : instanceSamples) {
+            for (long seed : iSamples.getSeeds()) {
+                ReactiveDecisionProcess dp =
+                        reactiveDecisionProcess(iSamples.getBaseInstance(),
+                                seed, policy, true);
+
+                dp.run();
+                objValues[n] = dp.getState().getSolution().objValue(objective);
+
+                double diff = objValues[n] - best[n];
+                sumDiff += diff;
+                sumSqDiff += diff * diff;
+                if (minDiff > diff)
+                    minDiff = diff;
+                if (maxDiff < diff)
+                    maxDiff = diff;
+
+                n ++;
+
+                if (n < racingMinSamples || n == best.length)
+                    continue;
+
+                double meanDiff = sumDiff / n;
+                double margin = diffMargin(n, meanDiff, sumSqDiff, maxDiff - minDiff);
+
+                if (meanDiff - margin > 0) {
+                    // statistically worse than the best, no need to simulate the remaining samples
+                    recordRacing(true, n, best.length);
+
+                    // the pessimistic fitness: the upper bound of the mean, at least the mean so far
+                    double sum = 0;
+                    for (int i = 0; i < n; i++)
+                        sum += objValues[i];
+
+                    MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+                    f.setObjectives(state, new double[]{Math.max(currBestMean + meanDiff + margin, sum / n)});
+                    return;
+                }
+            }
+        }
+
+        recordRacing(false, n, best.length);
+        updateBest(objValues);
+
+        MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+        f.setObjectives(state, new double[]{mean(objValues)});
+    }
+
+    /**
+     * Evaluate an individual on all the samples without racing, e.g. as the first reference
+     * of the racing, or an elite. The individual may become the new reference.
+     * @param policy the policy to be evaluated.
+     * @param fitness the fitness of the individual.
+     * @param state the evolution state.
+     */
+    public void evaluateFully(RoutingPolicy policy, Fitness fitness, EvolutionState state) {
+        int numSamples = 0;
+        for (InstanceSamples iSamples : instanceSamples)
+            numSamples += iSamples.getSeeds().size();
+
+        double[] fitnesses = new double[objectives.size()];
+        double[] objValues = new double[numSamples];
+
+        int n = 0;
+        for (InstanceSamples iSamples : instanceSamples) {
+            for (long seed : iSamples.getSeeds()) {
+                ReactiveDecisionProcess dp =
+                        reactiveDecisionProcess(iSamples.getBaseInstance(),
+                                seed, policy, true);
+
+                dp.run();
+                Solution<NodeSeqRoute> solution = dp.getState().getSolution();
+                for (int j = 0; j < fitnesses.length; j++)
+                    fitnesses[j] += solution.objValue(objectives.get(j));
+
+                objValues[n] = solution.objValue(objectives.get(0));
+                n ++;
+            }
+        }
+
+        for (int j = 0; j < fitnesses.length; j++)
+            fitnesses[j] /= numSamples;
+
+        recordRacing(false, numSamples, numSamples);
+        if (objectives.size() == 1)
+            updateBest(objValues);
+
+        MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+        f.setObjectives(state, fitnesses);
+    }
+
+    /**
+     * The margin of the one-sided confidence bounds of the mean paired difference,
+     * i.e. the bounds are the mean difference minus and plus the margin.
+     * @param n the number of samples.
+     * @param meanDiff the mean of the differences.
+     * @param sumSqDiff the sum of the squared differences.
+     * @param observedRange the range of the differences observed so far.
+     * @return the margin.
+     */
+    private double diffMargin(int n, double meanDiff, double sumSqDiff, double observedRange) {
+        if (racingMethod.equals(RACING_HOEFFDING)) {
+            double range = racingRange > 0 ? racingRange : observedRange;
+            return range * Math.sqrt(Math.log(1 / testAlpha) / (2 * n));
+        }
+
+        double variance = (sumSqDiff - n * meanDiff * meanDiff) / (n - 1);
+        if (variance < 0)
+            variance = 0;
+
+        return tQuantiles[n] * Math.sqrt(variance / n);
+    }
+
+    private synchronized void updateBest(double[] objValues) {
+        double mean = mean(objValues);
+
+        if (bestObjValues == null || mean < bestMean) {
+            bestObjValues = objValues;
+            bestMean = mean;
+        }
+    }
+
+    private synchronized void recordRacing(boolean dominated, int simulations, int fullSimulations) {
+        numEvaluations ++;
+        if (dominated)
+            numDominated ++;
+        numSimulations += simulations;
+        numFullSimulations += fullSimulations;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values)
+            sum += value;
+
+        return sum / values.length;
+    }
+
+    @Override
+    public synchronized void reportStatistics(EvolutionState state) {
+        super.reportStatistics(state);
+
+        if (numEvaluations == 0)
+            return;
+
+        state.output.message("Racing: " + numDominated + " of " + numEvaluations +
+                " evaluations dominated, " + numSimulations + " of " + numFullSimulations +
+                " simulations (" + (100.0 * numSimulations / numFullSimulations) + "%).");
+
+        numEvaluations = 0;
+        numDominated = 0;
+        numSimulations = 0;
+        numFullSimulations = 0;
+    }
+}
@@ -6,7 +6,7 @@ import ec.multiobjective.MultiObjectiveFitness;
 import gphhucarp.core.Instance;
 import gphhucarp.core.InstanceSamples;
 import gphhucarp.core.Objective;
-import gphhucarp.decisionprocess.DecisionProcess;
+import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.decisionprocess.RoutingPolicy;
 import gphhucarp.decisionprocess.reactive.ReactiveDecisionProcess;
 import gphhucarp.representation.Solution;
@@ -23,6 +23,15 @@ import gphhucarp.representation.route.TaskSeqRoute;
  *  - The reference objective value map, indicating the reference value
  *    of a given reactive decision process and a given objective.
  *
+ * With early termination, the evaluation stops once the sum of the objective values so far,
+ * the lower bound of the current process and the initial lower bounds of the remaining processes
+ * exceeds the cutoff of the sum. The fitness is then this sum divided by the number of processes.
+ *
+ * With parallel samples, the processes are run in parallel and their objective values are
+ * summed in the sequential order. The early termination depends on the order of the processes,
+ * so an evaluation with a cutoff runs the processes sequentially.
+ * The same holds for the processes run in lockstep.
+ *
  * Created by gphhucarp on 31/08/17.
  */
 public class ReactiveEvaluationModel extends EvaluationModel {
@@ -30,17 +39,61 @@ public class ReactiveEvaluationModel extends EvaluationModel {
     @Override
     public void evaluate(RoutingPolicy policy, Solution<TaskSeqRoute> plan,
                                   Fitness fitness, EvolutionState state) {
+        // the cutoff of the sum of the objective values over the processes, and
+        // the lower bound of the sum over the processes that have not been run.
+        double cutoff = cutoff();
+
+        if (lockstepSamples && cutoff == Double.POSITIVE_INFINITY) {
+            setFitness(simulateSamplesInLockstep(policy, true), fitness, state);
+            return;
+        }
+
+        if (parallelSamples && cutoff == Double.POSITIVE_INFINITY) {
+            setFitness(simulateSamplesInParallel(policy, true), fitness, state);
+            return;
+        }
+
         double[] fitnesses = new double[objectives.size()];
 
+        int totalSamples = 0;
+        for (InstanceSamples iSamples : instanceSamples)
+            totalSamples += iSamples.getSeeds().size();
+
+        double sumCutoff = cutoff * totalSamples;
+        double futureLowerBound = 0;
+        if (cutoff < Double.POSITIVE_INFINITY) {
+            for (InstanceSamples iSamples : instanceSamples)
+                futureLowerBound += iSamples.getSeeds().size() *
+                        DecisionProcessState.initObjLowerBound(iSamples.getBaseInstance(), objectives.get(0));
+        }
+
         int numdps = 0;
+        boolean terminated = false;
         for (InstanceSamples iSamples : instanceSamples) {
+            double initLowerBound = 0;
+            if (cutoff < Double.POSITIVE_INFINITY)
+                initLowerBound = DecisionProcessState.initObjLowerBound(iSamples.getBaseInstance(), objectives.get(0));
+
             for (long seed : iSamples.getSeeds()) {
-                // create a new reactive decision process from the based intance and the seed.
+                // get the reactive decision process from the based intance and the seed.
                 ReactiveDecisionProcess dp =
-                        DecisionProcess.initReactive(iSamples.getBaseInstance(),
-                                seed, policy);
+                        reactiveDecisionProcess(iSamples.getBaseInstance(),
+                                seed, policy, true);
+
+                if (cutoff < Double.POSITIVE_INFINITY) {
+                    futureLowerBound -= initLowerBound;
+                    dp.setCutoff(objectives.get(0), sumCutoff - fitnesses[0] - futureLowerBound);
+                }
 
                 dp.run();
+
+                if (dp.isTerminated()) {
+                    // the penalty fitness: the lower bound of the sum over all the processes
+                    fitnesses[0] += dp.getState().objLowerBound(objectives.get(0)) + futureLowerBound;
+                    terminated = true;
+                    break;
+                }
+
                 Solution<NodeSeqRoute> solution = dp.getState().getSolution();
                 for (int j = 0; j < fitnesses.length; j++) {
                     Objective objective = objectives.get(j);
@@ -48,16 +101,24 @@ public class ReactiveEvaluationModel extends EvaluationModel {
                             solution.objValue(objective); // / getObjRefValue(i, objective);
                     fitnesses[j] += normObjValue;
                 }
-                dp.reset();
 
                 numdps ++;
             }
+
+            if (terminated)
+                break;
         }
 
+        // the penalty fitness is averaged over all the processes, including those not run
+        if (terminated)
+            numdps = totalSamples;
+
         for (int j = 0; j < fitnesses.length; j++) {
             fitnesses[j] /= numdps;
         }
 
+        recordEvaluatedFitness(fitnesses[0]);
+
         MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
         f.setObjectives(state, fitnesses);
     }
@@ -66,15 +127,27 @@ public class ReactiveEvaluationModel extends EvaluationModel {
     public void evaluateOriginal(RoutingPolicy policy,
                                  Solution<TaskSeqRoute> plan,
                                  Fitness fitness, EvolutionState state) {
+        if (lockstepSamples) {
+            MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+            f.setObjectives(state, averageObjValues(simulateSamplesInLockstep(policy, false)));
+            return;
+        }
+
+        if (parallelSamples) {
+            MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+            f.setObjectives(state, averageObjValues(simulateSamplesInParallel(policy, false)));
+            return;
+        }
+
         double[] fitnesses = new double[objectives.size()];
 
         int numdps = 0;
         for (InstanceSamples iSamples : instanceSamples) {
             for (long seed : iSamples.getSeeds()) {
-                // create a new reactive decision process from the based intance and the seed.
+                // get the reactive decision process from the based intance and the seed.
                 ReactiveDecisionProcess dp =
-                        DecisionProcess.initReactive(iSamples.getBaseInstance(),
-                                seed, policy);
+                        reactiveDecisionProcess(iSamples.getBaseInstance(),
+                                seed, policy, false);
 
                 dp.run();
                 Solution<NodeSeqRoute> solution = dp.getState().getSolution();
@@ -84,7 +157,6 @@ public class ReactiveEvaluationModel extends EvaluationModel {
                             solution.objValue(objective);
                     fitnesses[j] += normObjValue;
                 }
-                dp.reset();
 
                 numdps ++;
             }
@@ -98,4 +170,38 @@ public class ReactiveEvaluationModel extends EvaluationModel {
         f.setObjectives(state, fitnesses);
     }
 
+    /**
+     * Set the fitness from the objective values of all the processes, which have been run
+     * separately (e.g. in parallel) without a cutoff. The result is the same as the evaluation.
+     * @param objValues the objective values of each process, in the order of the instances and seeds.
+     * @param fitness the fitness.
+     * @param state the evolution state.
+     */
+    public void setFitness(double[][] objValues, Fitness fitness, EvolutionState state) {
+        double[] fitnesses = averageObjValues(objValues);
+
+        recordEvaluatedFitness(fitnesses[0]);
+
+        MultiObjectiveFitness f = (MultiObjectiveFitness)fitness;
+        f.setObjectives(state, fitnesses);
+    }
+
+    /**
+     * Average the objective values of the processes.
+     * The objective values are summed in the sequential order of the processes.
+     * @param objValues the objective values of each process.
+     * @return the average objective values.
+     */
+    private double[] averageObjValues(double[][] objValues) {
+        double[] fitnesses = new double[objectives.size()];
+        for (double[] values : objValues) {
+            for (int j = 0; j < fitnesses.length; j++)
+                fitnesses[j] += values[j];
+        }
+
+        for (int j = 0; j < fitnesses.length; j++)
+            fitnesses[j] /= objValues.length;
+
+        return fitnesses;
+    }
 }
@@ -6,10 +6,14 @@ import ec.gp.ADFStack;
 import ec.gp.GPData;
 import ec.gp.GPIndividual;
 import ec.gp.GPNode;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.gp.CalcPriorityProblem;
 import gputils.DoubleData;
 import org.apache.commons.math3.random.RandomDataGenerator;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * A feature GP node will be used as a terminal of GP.
  *
@@ -48,4 +52,24 @@ public abstract class FeatureGPNode extends GPNode {
     }
 
     public abstract double value(CalcPriorityProblem calcPriorityProblem);
+
+    /**
+     * The level of the feature. The state and route level features are computed once
+     * for all the candidates of a decision.
+     * By default, a feature depends on the candidate.
+     * @return the level of the feature.
+     */
+    public FeatureLevel level() {
+        return FeatureLevel.CANDIDATE;
+    }
+
+    /**
+     * The state products (e.g. the route-to-task map) that the feature reads.
+     * Only these products will be maintained during the decision process.
+     * By default, a feature reads no product.
+     * @return the required state products.
+     */
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.noneOf(StateProduct.class);
+    }
 }
@@ -0,0 +1,16 @@
+package gphhucarp.gp.terminal;
+
+/**
+ * The level of a feature, i.e. what the feature depends on in a decision situation.
+ *  - STATE: the decision process state only, the same for all the routes and candidates.
+ *  - ROUTE: the route (and state), the same for all the candidates of a decision.
+ *  - CANDIDATE: the candidate task (and route and state).
+ * The state and route level features are invariant within a decision.
+ */
+
+public enum FeatureLevel {
+
+    STATE,
+    ROUTE,
+    CANDIDATE
+}
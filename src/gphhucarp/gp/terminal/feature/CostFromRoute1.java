@@ -4,10 +4,14 @@ import gphhucarp.core.Arc;
 import gphhucarp.core.Graph;
 import gphhucarp.core.Instance;
 import gphhucarp.decisionprocess.DecisionProcessState;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
 import gphhucarp.representation.route.NodeSeqRoute;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * The cost from the closest feasible alternative route to the candidate task.
  * If the candidate is the depot loop, return 0 (no need to consider alternative route).
@@ -58,4 +62,9 @@ public class CostFromRoute1 extends FeatureGPNode {
         // no alternative route is feasible
         return Double.POSITIVE_INFINITY;
     }
+
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.of(StateProduct.ROUTE_TO_TASK_MAP);
+    }
 }
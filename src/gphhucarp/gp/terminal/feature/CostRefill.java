@@ -4,6 +4,7 @@ import gphhucarp.core.Instance;
 import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
+import gphhucarp.gp.terminal.FeatureLevel;
 
 /**
  * Feature: the cost for refill, i.e. the cost from the current node to the depot.
@@ -23,4 +24,9 @@ public class CostRefill extends FeatureGPNode {
         NodeSeqRoute route = calcPriorityProblem.getRoute();
         return instance.getGraph().getEstDistance(route.currNode(), instance.getDepot());
     }
+
+    @Override
+    public FeatureLevel level() {
+        return FeatureLevel.ROUTE;
+    }
 }
@@ -1,10 +1,13 @@
 package gphhucarp.gp.terminal.feature;
 
 import gphhucarp.core.Arc;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The cost from the candidate to its closest remaining task.
@@ -31,4 +34,9 @@ public class CostToTask1 extends FeatureGPNode {
 
         return calcPriorityProblem.getState().getInstance().getGraph().getEstDistance(candidate, task1);
     }
+
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.of(StateProduct.TASK_TO_TASK_MAP);
+    }
 }
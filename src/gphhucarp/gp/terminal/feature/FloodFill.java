@@ -2,9 +2,13 @@ package gphhucarp.gp.terminal.feature;
 
 import gphhucarp.core.Arc;
 import gphhucarp.decisionprocess.DecisionProcessState;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public class FloodFill extends FeatureGPNode {
 
     public FloodFill() {
@@ -18,4 +22,9 @@ public class FloodFill extends FeatureGPNode {
         DecisionProcessState state = calcPriorityProblem.getState();
         return state.isOnFloods(candidate).size() + state.isOnFloods(candidate.getInverse()).size();
     }
+
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.of(StateProduct.FLOOD_MAPS);
+    }
 }
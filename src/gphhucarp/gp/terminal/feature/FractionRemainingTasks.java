@@ -3,6 +3,7 @@ package gphhucarp.gp.terminal.feature;
 import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
+import gphhucarp.gp.terminal.FeatureLevel;
 
 /**
  * Feature: the fraction of remaining tasks (unserved)
@@ -21,4 +22,9 @@ public class FractionRemainingTasks extends FeatureGPNode {
         return 1.0 * state.getRemainingTasks().size() /
                 state.getInstance().getTasks().size();
     }
+
+    @Override
+    public FeatureLevel level() {
+        return FeatureLevel.STATE;
+    }
 }
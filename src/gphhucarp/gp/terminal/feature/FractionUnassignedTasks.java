@@ -3,6 +3,7 @@ package gphhucarp.gp.terminal.feature;
 import gphhucarp.decisionprocess.DecisionProcessState;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
+import gphhucarp.gp.terminal.FeatureLevel;
 
 /**
  * Feature: the fraction of tasks unassigned (unserved and not assigned to vehicles).
@@ -22,4 +23,9 @@ public class FractionUnassignedTasks extends FeatureGPNode {
         return 1.0 * state.getUnassignedTasks().size() /
                 state.getInstance().getTasks().size();
     }
+
+    @Override
+    public FeatureLevel level() {
+        return FeatureLevel.STATE;
+    }
 }
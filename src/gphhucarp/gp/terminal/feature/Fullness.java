@@ -3,6 +3,7 @@ package gphhucarp.gp.terminal.feature;
 import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
+import gphhucarp.gp.terminal.FeatureLevel;
 
 /**
  * Feature: the fullness of the route. 0 if totally empty, 1 totally full.
@@ -20,4 +21,9 @@ public class Fullness extends FeatureGPNode {
         NodeSeqRoute route = calcPriorityProblem.getRoute();
         return route.getDemand() / route.getCapacity();
     }
+
+    @Override
+    public FeatureLevel level() {
+        return FeatureLevel.ROUTE;
+    }
 }
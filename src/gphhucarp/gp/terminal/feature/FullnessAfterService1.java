@@ -4,11 +4,14 @@ import gphhucarp.core.Arc;
 import gphhucarp.core.Graph;
 import gphhucarp.core.Instance;
 import gphhucarp.decisionprocess.DecisionProcessState;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
 import gphhucarp.representation.route.NodeSeqRoute;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The fullness of the closest feasible alternative route after serving the task.
@@ -70,4 +73,9 @@ public class FullnessAfterService1 extends FeatureGPNode {
             return (route1.getDemand() + candidate.getExpectedDemand()) / route1.getCapacity();
         }
     }
+
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.of(StateProduct.ROUTE_TO_TASK_MAP);
+    }
 }
@@ -3,6 +3,7 @@ package gphhucarp.gp.terminal.feature;
 import gphhucarp.representation.route.NodeSeqRoute;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
+import gphhucarp.gp.terminal.FeatureLevel;
 
 /**
  * Feature: the remaining capacity of the route.
@@ -21,4 +22,9 @@ public class RemainingCapacity extends FeatureGPNode {
         NodeSeqRoute route = calcPriorityProblem.getRoute();
         return route.getCapacity() - route.getDemand();
     }
+
+    @Override
+    public FeatureLevel level() {
+        return FeatureLevel.ROUTE;
+    }
 }
@@ -1,10 +1,14 @@
 package gphhucarp.gp.terminal.feature;
 
 import gphhucarp.core.Arc;
+import gphhucarp.decisionprocess.StateProduct;
 import gphhucarp.gp.CalcPriorityProblem;
 import gphhucarp.gp.terminal.FeatureGPNode;
 import gphhucarp.representation.route.NodeSeqRoute;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * The remaining capacity of the closest alternative route to the candidate task.
  * If there is no alternative route, return 0.
@@ -29,4 +33,9 @@ public class RemainingCapacity1 extends FeatureGPNode {
 
         return route1.getCapacity() - route1.getDemand();
     }
+
+    @Override
+    public Set<StateProduct> requiredStateProducts() {
+        return EnumSet.of(StateProduct.ROUTE_TO_TASK_MAP);
+    }
 }
@@ -18,6 +18,9 @@ import java.util.List;
  *
  * Note that the indicating vector can be double, i.e. a fraction of demand is served.
  *
+ * The sequences are only recorded if the route is recording. Otherwise (e.g. in a
+ * cost-only decision process), only the demand, cost and current node are maintained.
+ *
  * Created by gphhucarp on 25/08/17.
  */
 public class NodeSeqRoute extends Route {
@@ -26,12 +29,17 @@ public class NodeSeqRoute extends Route {
 
     // fields used during the decision process
     private Arc nextTask; // the next task to serve (depot loop if refilling)
+    private int currNode; // the current node, i.e. the last node of the sequence
+    private boolean recording = true; // whether the sequences are recorded
 
     public NodeSeqRoute(double capacity, double demand, double cost,
                         List<Integer> nodeSequence, List<Double> fracSequence) {
         super(capacity, demand, cost);
         this.nodeSequence = nodeSequence;
         this.fracSequence = fracSequence;
+
+        if (!nodeSequence.isEmpty())
+            currNode = nodeSequence.get(nodeSequence.size()-1);
     }
 
     public NodeSeqRoute(double capacity) {
@@ -62,6 +70,19 @@ public class NodeSeqRoute extends Route {
         this.nextTask = nextTask;
     }
 
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Set whether the node and fraction sequences are recorded when adding nodes.
+     * @param recording true to record the sequences, false to maintain only the demand,
+     *                  cost and current node.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
     /**
      * Add a node of an instance in a pilot search (not knowing the actual demand and cost)
      * @param node the node to be added.
@@ -69,10 +90,13 @@ public class NodeSeqRoute extends Route {
      * @param instance
      */
     public void addPilot(int node, double fraction, Instance instance) {
-        Arc arc = instance.getGraph().getArc(currNode(), node);
+        Arc arc = instance.getGraph().getArc(currNode, node);
 
-        nodeSequence.add(node);
-        fracSequence.add(fraction);
+        if (recording) {
+            nodeSequence.add(node);
+            fracSequence.add(fraction);
+        }
+        currNode = node;
         demand += arc.getExpectedDemand() * fraction;
         cost += arc.getServeCost() * fraction + arc.getExpectedDeadheadingCost() * (1-fraction);
     }
@@ -83,10 +107,13 @@ public class NodeSeqRoute extends Route {
      * @param fraction the fraction of demand to be served (1 if fully served, 0 if not served).
      */
     public void add(int node, double fraction, Instance instance) {
-        Arc arc = instance.getGraph().getArc(currNode(), node);
+        Arc arc = instance.getGraph().getArc(currNode, node);
 
-        nodeSequence.add(node);
-        fracSequence.add(fraction);
+        if (recording) {
+            nodeSequence.add(node);
+            fracSequence.add(fraction);
+        }
+        currNode = node;
         demand += instance.getActDemand(arc) * fraction;
         cost += arc.getServeCost() * fraction + instance.getActDeadheadingCost(arc) * (1-fraction);
     }
@@ -100,6 +127,7 @@ public class NodeSeqRoute extends Route {
     public static NodeSeqRoute initial(Instance instance) {
         NodeSeqRoute initialRoute = new NodeSeqRoute(instance.getCapacity());
         initialRoute.nodeSequence.add(instance.getDepot());
+        initialRoute.currNode = instance.getDepot();
 
         return initialRoute;
     }
@@ -111,11 +139,12 @@ public class NodeSeqRoute extends Route {
         nodeSequence.clear();
         fracSequence.clear();
         nodeSequence.add(instance.getDepot());
+        currNode = instance.getDepot();
     }
 
     @Override
     public int currNode() {
-        return nodeSequence.get(nodeSequence.size()-1);
+        return currNode;
     }
 
     @Override
@@ -147,6 +176,8 @@ public class NodeSeqRoute extends Route {
 
         NodeSeqRoute cloned = new NodeSeqRoute(capacity, demand, cost, clonedNodeSeq, clonedFracSeq);
         cloned.setNextTask(nextTask);
+        cloned.currNode = currNode;
+        cloned.recording = recording;
 
         return cloned;
     }
@@ -3,7 +3,9 @@ package gputils.terminal;
 import ec.EvolutionState;
 import ec.Problem;
 import ec.gp.*;
+import gputils.TerminalERCEvolutionState;
 
+import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
@@ -64,11 +66,48 @@ public abstract class TerminalERC extends ERC {
         return false;
     }
 
+    /**
+     * Write the index of the terminal in the terminal set, followed by the data of the terminal,
+     * e.g. the value of an ERC terminal.
+     */
     @Override
     public void writeNode(EvolutionState state, DataOutput output) throws IOException {
+        PrimitiveSet terminalSet = ((TerminalERCEvolutionState)state).getTerminalSet(subpop);
+
+        int index = 0;
+        while (index < terminalSet.size() && !fromPrimitive(terminalSet.get(index)))
+            index ++;
+
+        if (index == terminalSet.size())
+            state.output.fatal("The terminal " + terminal + " is not in the terminal set.");
+
+        output.writeInt(index);
         terminal.writeNode(state, output);
     }
 
+    @Override
+    public void readNode(EvolutionState state, DataInput input) throws IOException {
+        PrimitiveSet terminalSet = ((TerminalERCEvolutionState)state).getTerminalSet(subpop);
+        terminal = terminalSet.get(input.readInt());
+
+        if (terminal instanceof ERC) {
+            terminal = terminal.lightClone();
+            terminal.readNode(state, input);
+        }
+    }
+
+    /**
+     * Whether the terminal is the primitive of the terminal set, or a clone of it if it is an ERC.
+     * @param primitive the primitive of the terminal set.
+     * @return true if the terminal is from the primitive, and false otherwise.
+     */
+    private boolean fromPrimitive(GPNode primitive) {
+        if (terminal instanceof ERC)
+            return primitive.getClass() == terminal.getClass();
+
+        return primitive == terminal;
+    }
+
     @Override
     public boolean nodeEquals(GPNode node) {
         return equals(node);